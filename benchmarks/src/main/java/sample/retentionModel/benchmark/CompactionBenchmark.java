@@ -0,0 +1,90 @@
+package sample.retentionModel.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Exchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Live-query latency before and after compaction. Every seeded policy is first superseded
+ * {@code deadVersions} times, as a long-running deployment would have done, so most rows of the hot
+ * table are dead. With {@code compacted=true} the compaction job then moves them to the history
+ * table. The hot and history table sizes are printed at the start of each trial. The policy cache
+ * is disabled so that every read goes to the database.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class CompactionBenchmark {
+
+    static final int BATCH_SIZE = 500;
+
+    @State(Scope.Benchmark)
+    public static class Service extends RetentionServiceState {
+
+        @Param({"false", "true"})
+        public boolean compacted;
+
+        @Param({"4"})
+        public int deadVersions;
+
+        @Override
+        protected Map<String, Object> properties() {
+            Map<String, Object> properties = super.properties();
+            properties.put("retention.cache.maximum-size", "0");
+            properties.put("retention.compaction.enabled", "false");
+            properties.put("retention.compaction.batch-size", String.valueOf(BATCH_SIZE));
+            properties.put("retention.compaction.batch-delay", "PT0S");
+            return properties;
+        }
+
+        @Override
+        protected void prepare(JdbcTemplate jdbcTemplate) {
+            // Supersede every live policy with a copy, the way the update route versions a row. Live ids are
+            // contiguous, so the copy of a row gets the id that is one generation (the policy count) higher.
+            for (int i = 0; i < deadVersions; i++) {
+                Integer maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM RetentionPolicy", Integer.class);
+                jdbcTemplate.update("INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) "
+                    + "SELECT retention_model_id, retention_period, action, tenant, created_by FROM RetentionPolicy WHERE deleted_by IS NULL ORDER BY id");
+                jdbcTemplate.update("UPDATE RetentionPolicy SET deleted_by = 'benchmark', deleted_at = DATEADD(DAY, -1, LOCALTIMESTAMP), updated_to_id = id + ? "
+                    + "WHERE deleted_by IS NULL AND id <= ?", policies, maxId);
+            }
+            if (compacted) {
+                // Each run of the job moves a bounded number of batches; repeat until nothing is left
+                Exchange run;
+                do {
+                    run = producerTemplate.send("direct:compactRetentionPolicies",
+                        exchange -> exchange.getIn().setHeaders(new HashMap<>(Map.of("batch_size", BATCH_SIZE, "min_age", 0))));
+                } while (run.getProperty("compactedTotal", Integer.class) > 0);
+            }
+            System.out.printf("%nRetentionPolicy: %d rows, RetentionPolicyHistory: %d rows%n",
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy", Long.class),
+                jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicyHistory", Long.class));
+        }
+    }
+
+    @Benchmark
+    public Object getByTenant(Service service) {
+        return service.producerTemplate.requestBodyAndHeader("direct:getRetentionPoliciesByTenant", null, "tenant", service.randomTenant());
+    }
+
+    @Benchmark
+    public Object list(Service service) {
+        return service.producerTemplate.requestBodyAndHeaders("direct:getRetentionPolicies", null,
+            Map.of("limit", 100, "after_id", service.randomPolicyId()));
+    }
+}
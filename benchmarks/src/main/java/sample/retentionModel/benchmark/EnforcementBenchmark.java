@@ -0,0 +1,78 @@
+package sample.retentionModel.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Streams NDJSON records through {@code direct:enforceRetentionPolicies} and reports records per
+ * millisecond. Every record names a seeded (tenant, model) pair and half of them are expired, so
+ * each batch resolves its policies and writes decisions. With one thread the score is the
+ * per-core throughput of the route, including the stream cache spooling of request and response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(1)
+@Fork(1)
+public class EnforcementBenchmark {
+
+    static final int RECORDS = 100_000;
+
+    @State(Scope.Benchmark)
+    public static class Records {
+        byte[] ndjson;
+
+        @Setup(Level.Trial)
+        public void generate(RetentionServiceState service) throws Exception {
+            String recent = Instant.now().toString();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (int i = 0; i < RECORDS; i++) {
+                int policy = ThreadLocalRandom.current().nextInt(service.policies);
+                out.writeBytes(("{\"tenant\": \"" + RetentionServiceState.tenant(policy) + "\", \"retention_model_id\": " + service.modelId(policy)
+                    + ", \"record_id\": \"r-" + i + "\", \"created_at\": \"" + (i % 2 == 0 ? "2000-01-01T00:00:00Z" : recent) + "\"}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            }
+            ndjson = out.toByteArray();
+
+            // Reads the decisions while the exchange is still running, before its spool file is removed
+            service.context.getBean(CamelContext.class).addRoutes(new RouteBuilder() {
+                @Override
+                public void configure() {
+                    from("direct:enforceAndDrain")
+                        .to("direct:enforceRetentionPolicies")
+                        .process(exchange -> exchange.getMessage().setBody(
+                            exchange.getMessage().getBody(InputStream.class).transferTo(OutputStream.nullOutputStream())));
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public Object enforce(RetentionServiceState service, Records records) {
+        return service.producerTemplate.requestBody("direct:enforceAndDrain", new ByteArrayInputStream(records.ndjson));
+    }
+}
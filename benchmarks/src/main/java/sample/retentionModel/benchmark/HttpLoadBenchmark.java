@@ -0,0 +1,64 @@
+package sample.retentionModel.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load scenario against the platform-http endpoints, so the numbers include HTTP handling and JSON
+ * binding. Every benchmark thread is one concurrent client; change the concurrency with {@code -t}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(1)
+public class HttpLoadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Client {
+        final HttpClient httpClient = HttpClient.newHttpClient();
+    }
+
+    @Benchmark
+    public int getById(RetentionServiceState service, Client client) throws IOException, InterruptedException {
+        return send(client, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies/" + service.randomPolicyId())).GET().build());
+    }
+
+    @Benchmark
+    public int getByTenant(RetentionServiceState service, Client client) throws IOException, InterruptedException {
+        return send(client, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies/byTenant/" + service.randomTenant())).GET().build());
+    }
+
+    @Benchmark
+    public int list(RetentionServiceState service, Client client) throws IOException, InterruptedException {
+        return send(client, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies?limit=100&after_id=" + service.randomPolicyId())).GET().build());
+    }
+
+    @Benchmark
+    public int create(RetentionServiceState service, Client client) throws IOException, InterruptedException {
+        String body = "{\"retention_model_id\": " + service.randomModelId() + ", \"action\": \"DELETE\", \"tenant\": \"" + service.randomTenant() + "\"}";
+        return send(client, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build());
+    }
+
+    private static int send(Client client, HttpRequest request) throws IOException, InterruptedException {
+        return RetentionServiceState.send(client.httpClient, request);
+    }
+}
@@ -0,0 +1,100 @@
+package sample.retentionModel.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One tenant flooding the service with creates, as a mass re-onboarding script would, next to a few
+ * well-behaved clients reading other tenants' policies. Compare the {@code quiet} latency percentiles
+ * with {@code retention.bulkhead.enabled} on and off. The policy cache is disabled so that every
+ * quiet read goes to the database. Creates the bulkhead turns away with 429 are counted in
+ * {@code rejected} rather than failing the run; any other answer outside 2xx fails it.
+ * {@code quietAlone} runs the same reads without the flood, as the baseline for the percentiles.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 20)
+@Fork(1)
+public class NoisyTenantBenchmark {
+
+    static final String NOISY_TENANT = "noisy-tenant";
+
+    @State(Scope.Benchmark)
+    public static class Service extends RetentionServiceState {
+
+        @Param({"false", "true"})
+        public boolean bulkheads;
+
+        final HttpClient httpClient = HttpClient.newHttpClient();
+
+        @Override
+        protected Map<String, Object> properties() {
+            Map<String, Object> properties = super.properties();
+            properties.put("retention.bulkhead.enabled", String.valueOf(bulkheads));
+            properties.put("retention.cache.maximum-size", "0");
+            return properties;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Rejections {
+        public long rejected;
+    }
+
+    @Benchmark
+    @Group("noisyTenant")
+    @GroupThreads(64)
+    public int noisy(Service service, Rejections rejections) throws IOException, InterruptedException {
+        String body = "{\"retention_model_id\": " + service.randomModelId() + ", \"action\": \"DELETE\", \"tenant\": \"" + NOISY_TENANT + "\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        int status = service.httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 429) {
+            rejections.rejected++;
+        } else if (status / 100 != 2) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " answered " + status);
+        }
+        return status;
+    }
+
+    @Benchmark
+    @Group("noisyTenant")
+    @GroupThreads(4)
+    public int quiet(Service service) throws IOException, InterruptedException {
+        return send(service, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies/byTenant/" + service.randomTenant())).GET().build());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int quietAlone(Service service) throws IOException, InterruptedException {
+        return quiet(service);
+    }
+
+    private static int send(Service service, HttpRequest request) throws IOException, InterruptedException {
+        return RetentionServiceState.send(service.httpClient, request);
+    }
+}
@@ -0,0 +1,149 @@
+package sample.retentionModel.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.camel.ProducerTemplate;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import sample.retentionModel.RetentionModelApplication;
+
+/**
+ * Starts the service against a private in-memory H2 database created from {@code database/schema.sql}
+ * and seeds it with the requested number of policies. Shared by all benchmark threads of a trial.
+ */
+@State(Scope.Benchmark)
+public class RetentionServiceState {
+
+    static final int TENANTS = 100;
+    static final int MODELS = 10;
+
+    @Param({"1000", "100000", "1000000"})
+    public int policies;
+
+    ConfigurableApplicationContext context;
+    ProducerTemplate producerTemplate;
+    String baseUrl;
+
+    private final List<Integer> modelIds = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void start() {
+        // Passed as command line arguments so they override application.properties
+        String[] args = properties().entrySet().stream()
+            .map(property -> "--" + property.getKey() + "=" + property.getValue())
+            .toArray(String[]::new);
+        context = new SpringApplicationBuilder(RetentionModelApplication.class).run(args);
+
+        producerTemplate = context.getBean(ProducerTemplate.class);
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        seed(context.getBean(JdbcTemplate.class));
+        prepare(context.getBean(JdbcTemplate.class));
+    }
+
+    /** Runs after seeding; subclasses bring the database into the state they measure. */
+    protected void prepare(JdbcTemplate jdbcTemplate) {
+    }
+
+    /** Spring properties of the service under test; subclasses add the settings they compare. */
+    protected Map<String, Object> properties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        properties.put("spring.sql.init.mode", "always");
+        properties.put("spring.sql.init.schema-locations", System.getProperty("benchmark.schema", "file:../database/schema.sql"));
+        properties.put("server.port", "0");
+        properties.put("logging.level.root", "WARN");
+        // The load benchmarks measure the routes, not the concurrency limits; NoisyTenantBenchmark turns them back on
+        properties.put("retention.bulkhead.enabled", "false");
+        return properties;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    /**
+     * Sends a request and fails the benchmark on any answer outside 2xx, so that fast error
+     * responses are never reported as throughput.
+     */
+    static int send(HttpClient httpClient, HttpRequest request) throws IOException, InterruptedException {
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status / 100 != 2) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " answered " + status);
+        }
+        return status;
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate) {
+        for (int i = 0; i < MODELS; i++) {
+            jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+                "model-" + i, "benchmark", "Benchmark model " + i, 30 + i, "email,phone", "benchmark");
+        }
+        modelIds.addAll(jdbcTemplate.queryForList("SELECT id FROM RetentionModel ORDER BY id", Integer.class));
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < policies; i++) {
+            rows.add(new Object[] {modelIds.get(i % MODELS), 30, i % 2 == 0 ? "DELETE" : "ANONYMIZE", tenant(i), "benchmark"});
+            if (rows.size() == 10_000) {
+                insertPolicies(jdbcTemplate, rows);
+                rows.clear();
+            }
+        }
+        insertPolicies(jdbcTemplate, rows);
+    }
+
+    private static void insertPolicies(JdbcTemplate jdbcTemplate, List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (?, ?, ?, ?, ?)", rows);
+    }
+
+    static String tenant(int i) {
+        return "tenant-" + (i % TENANTS);
+    }
+
+    String randomTenant() {
+        return tenant(ThreadLocalRandom.current().nextInt(TENANTS));
+    }
+
+    Integer randomModelId() {
+        return modelIds.get(ThreadLocalRandom.current().nextInt(modelIds.size()));
+    }
+
+    /** The model of the i-th seeded policy. */
+    Integer modelId(int i) {
+        return modelIds.get(i % MODELS);
+    }
+
+    /** Removes a directory created for an embedded database file. */
+    static void deleteRecursively(Path directory) {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A policy id from the seeded range; seeded policies get ids 1..policies in a fresh database. */
+    int randomPolicyId() {
+        return 1 + ThreadLocalRandom.current().nextInt(policies);
+    }
+}
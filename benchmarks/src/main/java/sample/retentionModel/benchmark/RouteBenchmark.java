@@ -0,0 +1,96 @@
+package sample.retentionModel.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sample.retentionModel.policy.RetentionPolicyCreate;
+import sample.retentionModel.policy.RetentionPolicyUpdate;
+
+/**
+ * Drives the policy {@code direct:} endpoints through a {@link org.apache.camel.ProducerTemplate}, which
+ * measures the routes and the database without the HTTP layer. Throughput and sampled latency
+ * (p50/p99) are reported for every operation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RouteBenchmark {
+
+    /** The live version each thread keeps updating; every update replaces it with the new id. */
+    @State(Scope.Thread)
+    public static class UpdateTarget {
+        Integer id;
+
+        @Setup(Level.Iteration)
+        public void create(RetentionServiceState service) {
+            id = createPolicy(service);
+        }
+    }
+
+    /** A fresh policy for every delete, so each invocation deletes a live row. */
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        Integer id;
+
+        @Setup(Level.Invocation)
+        public void create(RetentionServiceState service) {
+            id = createPolicy(service);
+        }
+    }
+
+    @Benchmark
+    public Object create(RetentionServiceState service) {
+        return createPolicy(service);
+    }
+
+    @Benchmark
+    public Object getById(RetentionServiceState service) {
+        return service.producerTemplate.requestBodyAndHeader("direct:getRetentionPolicyById", null, "id", service.randomPolicyId());
+    }
+
+    @Benchmark
+    public Object getByTenant(RetentionServiceState service) {
+        return service.producerTemplate.requestBodyAndHeader("direct:getRetentionPoliciesByTenant", null, "tenant", service.randomTenant());
+    }
+
+    @Benchmark
+    public Object list(RetentionServiceState service) {
+        return service.producerTemplate.requestBodyAndHeaders("direct:getRetentionPolicies", null,
+            Map.of("limit", 100, "after_id", service.randomPolicyId()));
+    }
+
+    @Benchmark
+    public Object update(RetentionServiceState service, UpdateTarget target) {
+        RetentionPolicyUpdate update = new RetentionPolicyUpdate();
+        update.setRetentionPeriod(60);
+        target.id = service.producerTemplate.requestBodyAndHeader("direct:updateRetentionPolicyById", update, "id", target.id, Integer.class);
+        return target.id;
+    }
+
+    @Benchmark
+    public Object delete(RetentionServiceState service, DeleteTarget target) {
+        return service.producerTemplate.requestBodyAndHeader("direct:deleteRetentionPolicyById", null, "id", target.id);
+    }
+
+    static Integer createPolicy(RetentionServiceState service) {
+        RetentionPolicyCreate create = new RetentionPolicyCreate();
+        create.setRetentionModelId(service.randomModelId());
+        create.setAction("DELETE");
+        create.setTenant(service.randomTenant());
+        return service.producerTemplate.requestBody("direct:createRetentionPolicy", create, Integer.class);
+    }
+}
@@ -0,0 +1,64 @@
+package sample.retentionModel.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import sample.retentionModel.RetentionModelApplication;
+
+/**
+ * Cold startup time of each embedded storage profile, up to the point where the routes accept
+ * requests. Every fork starts the service exactly once, in a fresh JVM and on a new database.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"embedded", "embedded-file"})
+    public String mode;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("retention-benchmark");
+    }
+
+    @Benchmark
+    public ConfigurableApplicationContext start() {
+        context = new SpringApplicationBuilder(RetentionModelApplication.class).run(
+            "--spring.profiles.active=" + mode,
+            "--retention.embedded.file=" + directory.resolve("retention"),
+            "--server.port=0",
+            "--logging.level.root=WARN");
+        return context;
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        RetentionServiceState.deleteRecursively(directory);
+    }
+}
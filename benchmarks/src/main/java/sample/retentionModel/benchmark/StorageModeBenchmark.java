@@ -0,0 +1,82 @@
+package sample.retentionModel.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-request latency of the in-memory ({@code embedded}) and file-backed ({@code embedded-file})
+ * storage profiles, with the pool and statement cache those profiles configure.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class StorageModeBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service extends RetentionServiceState {
+
+        @Param({"embedded", "embedded-file"})
+        public String mode;
+
+        private Path directory;
+
+        @Override
+        protected Map<String, Object> properties() {
+            Map<String, Object> properties = super.properties();
+            // The profile chooses the database, applies the schema and sizes the pool
+            properties.remove("spring.datasource.url");
+            properties.remove("spring.sql.init.mode");
+            properties.remove("spring.sql.init.schema-locations");
+            properties.put("spring.profiles.active", mode);
+            try {
+                directory = Files.createTempDirectory("retention-benchmark");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            properties.put("retention.embedded.file", directory.resolve("retention"));
+            // Without the policy cache the reads reach the database, which is what the modes differ in
+            properties.put("retention.cache.maximum-size", 0);
+            return properties;
+        }
+
+        // A separate helper rather than an override of stop(), which JMH would also run as an inherited helper
+        @TearDown(Level.Trial)
+        public void deleteDirectory() {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    public Object getById(Service service) {
+        return service.producerTemplate.requestBodyAndHeader("direct:getRetentionPolicyById", null, "id", service.randomPolicyId());
+    }
+
+    @Benchmark
+    public Object getByTenant(Service service) {
+        return service.producerTemplate.requestBodyAndHeader("direct:getRetentionPoliciesByTenant", null, "tenant", service.randomTenant());
+    }
+
+    @Benchmark
+    public Object create(Service service) {
+        return RouteBenchmark.createPolicy(service);
+    }
+}
@@ -0,0 +1,68 @@
+package sample.retentionModel.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sustained concurrent throughput with {@code retention.virtual-threads.enabled} on and off. The
+ * client concurrency (256 by default, change with {@code -t}) is well above the servlet thread
+ * pool, which is the situation the switch is meant for. Needs Java 21 for the {@code true} case.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 20)
+@Threads(256)
+@Fork(1)
+public class VirtualThreadsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service extends RetentionServiceState {
+
+        @Param({"false", "true"})
+        public boolean virtualThreads;
+
+        final HttpClient httpClient = HttpClient.newHttpClient();
+
+        @Override
+        protected Map<String, Object> properties() {
+            Map<String, Object> properties = super.properties();
+            properties.put("retention.virtual-threads.enabled", String.valueOf(virtualThreads));
+            return properties;
+        }
+    }
+
+    @Benchmark
+    public int getByTenant(Service service) throws IOException, InterruptedException {
+        return send(service, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies/byTenant/" + service.randomTenant())).GET().build());
+    }
+
+    @Benchmark
+    public int create(Service service) throws IOException, InterruptedException {
+        String body = "{\"retention_model_id\": " + service.randomModelId() + ", \"action\": \"DELETE\", \"tenant\": \"" + service.randomTenant() + "\"}";
+        return send(service, HttpRequest.newBuilder(URI.create(service.baseUrl + "/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build());
+    }
+
+    private static int send(Service service, HttpRequest request) throws IOException, InterruptedException {
+        return RetentionServiceState.send(service.httpClient, request);
+    }
+}
@@ -0,0 +1,6 @@
+-- Run once on databases created before tenant and deleted_by became VARCHAR(255).
+-- Indexed columns must not be TEXT (CLOB in H2), so schema.sql cannot create its indexes until this
+-- has run. Each ALTER rewrites the whole table, which is why it is not part of schema.sql.
+ALTER TABLE RetentionModel ALTER COLUMN deleted_by SET DATA TYPE VARCHAR(255);
+ALTER TABLE RetentionPolicy ALTER COLUMN deleted_by SET DATA TYPE VARCHAR(255);
+ALTER TABLE RetentionPolicy ALTER COLUMN tenant SET DATA TYPE VARCHAR(255);
@@ -7,7 +7,7 @@ CREATE TABLE IF NOT EXISTS RetentionModel (
     sensitive_fields TEXT,
     created_by TEXT NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    deleted_by TEXT NULL DEFAULT NULL,
+    deleted_by VARCHAR(255) NULL DEFAULT NULL,
     deleted_at TIMESTAMP NULL DEFAULT NULL,
     updated_to_id INTEGER DEFAULT NULL
 );
@@ -17,11 +17,87 @@ CREATE TABLE IF NOT EXISTS RetentionPolicy (
     retention_model_id INTEGER NOT NULL,
     retention_period INTEGER,
     action TEXT NOT NULL,
-    tenant TEXT NOT NULL,
+    tenant VARCHAR(255) NOT NULL,
     created_by TEXT NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    deleted_by TEXT NULL DEFAULT NULL,
+    deleted_by VARCHAR(255) NULL DEFAULT NULL,
     deleted_at TIMESTAMP NULL DEFAULT NULL,
     updated_to_id INTEGER DEFAULT NULL,
     FOREIGN KEY (retention_model_id) REFERENCES RetentionModel(id)
 );
+
+-- Indexed columns must not be TEXT (CLOB in H2). Databases created before tenant and deleted_by
+-- became VARCHAR(255) are converted once by migrations/001-varchar-indexed-columns.sql.
+
+-- Version chains are followed through updated_to_id in both directions
+CREATE INDEX IF NOT EXISTS idx_retention_model_updated_to_id ON RetentionModel (updated_to_id);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_updated_to_id ON RetentionPolicy (updated_to_id);
+
+-- Active policies by tenant, and active policies referencing a model
+CREATE INDEX IF NOT EXISTS idx_retention_policy_tenant_deleted_by ON RetentionPolicy (tenant, deleted_by);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_model_deleted_by ON RetentionPolicy (retention_model_id, deleted_by);
+
+-- Active policies of a (tenant, retention model) pair, joined by the enforcement and resolve lookups
+CREATE INDEX IF NOT EXISTS idx_retention_policy_tenant_model ON RetentionPolicy (tenant, retention_model_id, deleted_by);
+
+-- Write counter of each live table, used for the collection ETags of the list endpoints.
+-- Every write bumps it inside its transaction, so a changed page always comes with a new version.
+CREATE TABLE IF NOT EXISTS TableVersion (
+    table_name VARCHAR(64) PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+INSERT INTO TableVersion (table_name, version) SELECT 'RetentionModel', 0 WHERE NOT EXISTS (SELECT 1 FROM TableVersion WHERE table_name = 'RetentionModel');
+INSERT INTO TableVersion (table_name, version) SELECT 'RetentionPolicy', 0 WHERE NOT EXISTS (SELECT 1 FROM TableVersion WHERE table_name = 'RetentionPolicy');
+
+-- Creation and deletion windows read by the change feed, and the deletion ages read by the compaction job
+CREATE INDEX IF NOT EXISTS idx_retention_model_created_at ON RetentionModel (created_at);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_created_at ON RetentionPolicy (created_at);
+CREATE INDEX IF NOT EXISTS idx_retention_model_deleted_at ON RetentionModel (deleted_at);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_deleted_at ON RetentionPolicy (deleted_at);
+
+-- Superseded and deleted versions moved out of the hot tables by the compaction job.
+-- No foreign key: a compacted policy may reference a model that was compacted as well.
+CREATE TABLE IF NOT EXISTS RetentionModelHistory (
+    id INTEGER PRIMARY KEY,
+    name TEXT NOT NULL,
+    ownership TEXT NOT NULL,
+    description TEXT,
+    retention_period INTEGER NOT NULL,
+    sensitive_fields TEXT,
+    created_by TEXT NOT NULL,
+    created_at TIMESTAMP,
+    deleted_by VARCHAR(255),
+    deleted_at TIMESTAMP,
+    updated_to_id INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS RetentionPolicyHistory (
+    id INTEGER PRIMARY KEY,
+    retention_model_id INTEGER NOT NULL,
+    retention_period INTEGER,
+    action TEXT NOT NULL,
+    tenant VARCHAR(255) NOT NULL,
+    created_by TEXT NOT NULL,
+    created_at TIMESTAMP,
+    deleted_by VARCHAR(255),
+    deleted_at TIMESTAMP,
+    updated_to_id INTEGER
+);
+
+CREATE INDEX IF NOT EXISTS idx_retention_model_history_updated_to_id ON RetentionModelHistory (updated_to_id);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_history_updated_to_id ON RetentionPolicyHistory (updated_to_id);
+CREATE INDEX IF NOT EXISTS idx_retention_model_history_created_at ON RetentionModelHistory (created_at);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_history_created_at ON RetentionPolicyHistory (created_at);
+CREATE INDEX IF NOT EXISTS idx_retention_model_history_deleted_at ON RetentionModelHistory (deleted_at);
+CREATE INDEX IF NOT EXISTS idx_retention_policy_history_deleted_at ON RetentionPolicyHistory (deleted_at);
+
+-- Every version, live or compacted, for version chains and the change feed
+CREATE OR REPLACE VIEW RetentionModelAll AS
+    SELECT id, name, ownership, description, retention_period, sensitive_fields, created_by, created_at, deleted_by, deleted_at, updated_to_id FROM RetentionModel
+    UNION ALL
+    SELECT id, name, ownership, description, retention_period, sensitive_fields, created_by, created_at, deleted_by, deleted_at, updated_to_id FROM RetentionModelHistory;
+
+CREATE OR REPLACE VIEW RetentionPolicyAll AS
+    SELECT id, retention_model_id, retention_period, action, tenant, created_by, created_at, deleted_by, deleted_at, updated_to_id FROM RetentionPolicy
+    UNION ALL
+    SELECT id, retention_model_id, retention_period, action, tenant, created_by, created_at, deleted_by, deleted_at, updated_to_id FROM RetentionPolicyHistory;
@@ -0,0 +1,161 @@
+package sample.retentionModel;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Concurrency limits in front of the SQL-heavy routes: one per tenant and one for the whole service.
+ * A request that finds its limits taken waits in a bounded queue for at most the configured time,
+ * and is otherwise rejected with {@link BulkheadFullException}. The tenant limit is taken first, so a
+ * noisy tenant queues behind its own requests and never holds global queue slots beyond its share.
+ *
+ * <p>The tenant comes from the {@link #TENANT} exchange property, which only the routes set from a
+ * validated body or the path. Request headers are never consulted, so a client cannot charge its
+ * requests to another tenant's limit or spread them over made-up tenants.
+ *
+ * <p>In-flight, queued and limit gauges and a rejection counter are published as
+ * {@code retention.bulkhead.*}, tagged with the scope ({@code global} or {@code tenant}).
+ */
+@Component
+public class Bulkhead {
+
+    /** Exchange property naming the tenant whose limit a request counts against. */
+    public static final String TENANT = "bulkheadTenant";
+
+    private final boolean enabled;
+    private final int tenantMaxConcurrent;
+    private final int tenantMaxQueued;
+    private final long maxWaitNanos;
+    private final long retryAfterSeconds;
+
+    private final Compartment global;
+    // Bounded, so that arbitrary tenant names cannot grow it; a compartment evicted while in use
+    // is still released correctly, the tenant just starts over with a fresh one
+    private final Cache<String, Compartment> tenants;
+
+    private final Counter globalRejections;
+    private final Counter tenantRejections;
+
+    public Bulkhead(MeterRegistry meterRegistry,
+                    @Value("${retention.bulkhead.enabled:true}") boolean enabled,
+                    @Value("${retention.bulkhead.global.max-concurrent:20}") int globalMaxConcurrent,
+                    @Value("${retention.bulkhead.global.max-queued:100}") int globalMaxQueued,
+                    @Value("${retention.bulkhead.tenant.max-concurrent:4}") int tenantMaxConcurrent,
+                    @Value("${retention.bulkhead.tenant.max-queued:8}") int tenantMaxQueued,
+                    @Value("${retention.bulkhead.max-wait:PT1S}") Duration maxWait,
+                    @Value("${retention.bulkhead.retry-after:PT1S}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.tenantMaxConcurrent = tenantMaxConcurrent;
+        this.tenantMaxQueued = tenantMaxQueued;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+
+        this.global = new Compartment(globalMaxConcurrent, globalMaxQueued);
+        this.tenants = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+        Gauge.builder("retention.bulkhead.in_flight", global, Compartment::inFlight).tag("scope", "global").register(meterRegistry);
+        Gauge.builder("retention.bulkhead.queued", global, Compartment::queued).tag("scope", "global").register(meterRegistry);
+        Gauge.builder("retention.bulkhead.limit", global, compartment -> compartment.maxConcurrent).tag("scope", "global").register(meterRegistry);
+        Gauge.builder("retention.bulkhead.in_flight", tenants, cache -> cache.asMap().values().stream().mapToInt(Compartment::inFlight).sum())
+            .tag("scope", "tenant").register(meterRegistry);
+        Gauge.builder("retention.bulkhead.queued", tenants, cache -> cache.asMap().values().stream().mapToInt(Compartment::queued).sum())
+            .tag("scope", "tenant").register(meterRegistry);
+        Gauge.builder("retention.bulkhead.limit", this, bulkhead -> bulkhead.tenantMaxConcurrent).tag("scope", "tenant").register(meterRegistry);
+        this.globalRejections = Counter.builder("retention.bulkhead.rejections").tag("scope", "global").register(meterRegistry);
+        this.tenantRejections = Counter.builder("retention.bulkhead.rejections").tag("scope", "tenant").register(meterRegistry);
+    }
+
+    /**
+     * Takes a slot for the {@link #TENANT} property, if any, and a global slot, both released when the exchange
+     * completes. Throws {@link BulkheadFullException} if either cannot be had in time.
+     */
+    public void enter(Exchange exchange) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+
+        String tenant = exchange.getProperty(TENANT, String.class);
+        Compartment tenantCompartment = tenant != null
+            ? tenants.get(tenant, key -> new Compartment(tenantMaxConcurrent, tenantMaxQueued))
+            : null;
+        if (tenantCompartment != null && !tenantCompartment.acquire(maxWaitNanos)) {
+            tenantRejections.increment();
+            throw new BulkheadFullException("tenant", retryAfterSeconds);
+        }
+        if (!global.acquire(maxWaitNanos)) {
+            if (tenantCompartment != null) {
+                tenantCompartment.release();
+            }
+            globalRejections.increment();
+            throw new BulkheadFullException("global", retryAfterSeconds);
+        }
+
+        exchange.getExchangeExtension().addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                global.release();
+                if (tenantCompartment != null) {
+                    tenantCompartment.release();
+                }
+            }
+        });
+    }
+
+    private static final class Compartment {
+
+        private final int maxConcurrent;
+        private final int maxQueued;
+        private final Semaphore permits;
+        private final AtomicInteger queued = new AtomicInteger();
+
+        Compartment(int maxConcurrent, int maxQueued) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+
+        boolean acquire(long maxWaitNanos) throws InterruptedException {
+            if (permits.tryAcquire()) {
+                return true;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                return false;
+            }
+            try {
+                return permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        int inFlight() {
+            return maxConcurrent - permits.availablePermits();
+        }
+
+        int queued() {
+            return queued.get();
+        }
+    }
+}
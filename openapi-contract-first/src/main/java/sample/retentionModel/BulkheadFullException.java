@@ -0,0 +1,25 @@
+package sample.retentionModel;
+
+/**
+ * Thrown when a request cannot get a slot in its tenant's or the global bulkhead within the
+ * allowed wait. The routes answer it with 429 and a {@code Retry-After} header.
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    private final String scope;
+    private final long retryAfterSeconds;
+
+    public BulkheadFullException(String scope, long retryAfterSeconds) {
+        super("Too many concurrent requests (" + scope + " limit)");
+        this.scope = scope;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
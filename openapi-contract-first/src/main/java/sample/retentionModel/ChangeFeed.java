@@ -0,0 +1,256 @@
+package sample.retentionModel;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Recent changes to models and policies, shared by all change-feed subscribers. A single poller
+ * reads the database once per tick, so the cost of the feed does not grow with the number of
+ * subscribers. Subscribers long-poll against the in-memory buffer and only go to the database
+ * when their cursor is older than the buffer.
+ *
+ * <p>The cursor is a database timestamp. Every change before it has been delivered. The poller
+ * stays a settle delay behind the database clock, so transactions that were still open when a
+ * window was read are picked up by that window instead of being skipped.
+ *
+ * <p>Every waiting subscriber holds a servlet thread, so at most {@code max-waiters} of them wait at
+ * a time. Past that, a subscriber with nothing new is answered at once with a {@code Retry-After}
+ * header. Waiting subscribers hold no connection, so they are not counted against the bulkhead,
+ * which bounds connection use and whose global limit is far below the number of subscribers. Only
+ * the catch-up query of a request enters it. A catch-up from the database returns at most a page of
+ * changes and a cursor into the missing range, so a subscriber that is far behind catches up over
+ * several requests.
+ */
+@Component
+public class ChangeFeed {
+
+    static final String CATCH_UP = "changeFeedCatchUp";
+    static final String CATCH_UP_INSTANT = "changeFeedCatchUpInstant";
+
+    private final int bufferSize;
+    private final long maxWaitMillis;
+    private final int maxWaiters;
+    private final long retryAfterSeconds;
+    private final int pageSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    private final Deque<ChangeEvent> buffer = new ArrayDeque<>();
+
+    // The buffer holds every change at or after tail and before head
+    private LocalDateTime tail;
+    private LocalDateTime head;
+    private int waiters;
+
+    public ChangeFeed(@Value("${retention.changes.buffer-size:10000}") int bufferSize,
+                      @Value("${retention.changes.max-wait:PT30S}") Duration maxWait,
+                      @Value("${retention.changes.max-waiters:50}") int maxWaiters,
+                      @Value("${retention.changes.retry-after:PT1S}") Duration retryAfter,
+                      @Value("${retention.changes.page-size:1000}") int pageSize) {
+        this.bufferSize = bufferSize;
+        this.maxWaitMillis = maxWait.toMillis();
+        this.maxWaiters = maxWaiters;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.pageSize = pageSize;
+    }
+
+    /** Sets the since header to the end of the previous window; the first tick only starts the feed. */
+    public void window(Exchange exchange) {
+        LocalDateTime until = exchange.getIn().getHeader("until", Timestamp.class).toLocalDateTime();
+        lock.lock();
+        try {
+            if (head == null) {
+                tail = until;
+                head = until;
+                advanced.signalAll();
+                return;
+            }
+            exchange.getIn().setHeader("since", Timestamp.valueOf(head));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Appends the changes of the polled window and wakes the waiting subscribers. */
+    public void append(Exchange exchange) {
+        List<ChangeEvent> events = toEvents(exchange.getIn().getBody(List.class));
+        LocalDateTime until = exchange.getIn().getHeader("until", Timestamp.class).toLocalDateTime();
+        lock.lock();
+        try {
+            buffer.addAll(events);
+            while (buffer.size() > bufferSize) {
+                tail = buffer.removeFirst().changedAt().plusNanos(1);
+            }
+            head = until;
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Answers a subscriber from the buffer, waiting up to the requested time for a change unless
+     * the waiters are at their limit. If the cursor is older than the buffer, sets the since, until
+     * and limit headers and the catch-up property so that the route reads the first page of the
+     * missing range from the database instead.
+     */
+    public void await(Exchange exchange) throws InterruptedException {
+        LocalDateTime cursor;
+        try {
+            String cursorParam = exchange.getIn().getHeader("cursor", String.class);
+            cursor = cursorParam != null ? LocalDateTime.parse(cursorParam) : null;
+        } catch (DateTimeParseException e) {
+            exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+            exchange.getMessage().setBody("cursor must be a cursor returned by an earlier response");
+            return;
+        }
+        int waitSeconds = exchange.getIn().getHeader("wait", 0, Integer.class);
+        long remaining = TimeUnit.MILLISECONDS.toNanos(Math.min(Math.max(0, waitSeconds) * 1000L, maxWaitMillis));
+
+        lock.lock();
+        try {
+            remaining = waitFor(() -> head != null, remaining, exchange);
+            if (head == null) {
+                exchange.getMessage().setBody(new ChangeBatch(null, List.of()));
+                return;
+            }
+            if (cursor == null) {
+                // A new subscriber starts from the current position
+                cursor = head;
+            }
+            if (cursor.isBefore(tail)) {
+                exchange.getIn().setHeader("since", Timestamp.valueOf(cursor));
+                exchange.getIn().setHeader("until", Timestamp.valueOf(head));
+                // One row more than a page tells the catch-up whether the range goes on
+                exchange.getIn().setHeader("limit", pageSize + 1);
+                exchange.setProperty(CATCH_UP, true);
+                return;
+            }
+
+            LocalDateTime since = cursor;
+            waitFor(() -> !eventsSince(since).isEmpty(), remaining, exchange);
+            List<ChangeEvent> events = eventsSince(cursor);
+            exchange.getMessage().setBody(new ChangeBatch(head.isAfter(cursor) ? head.toString() : cursor.toString(), events));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Answers a subscriber whose cursor was older than the buffer with the rows read from the database.
+     * A cursor cannot point between changes of the same instant, so a page that does not reach the end
+     * of the range stops before the instant of the first change left out, and its cursor is that
+     * instant. When a single instant holds more than a page, as a large batch does, sets the since and
+     * until headers and the instant property so that the route reads that instant whole.
+     */
+    public void catchUp(Exchange exchange) {
+        List<ChangeEvent> events = toEvents(exchange.getIn().getBody(List.class));
+        LocalDateTime until = exchange.getIn().getHeader("until", Timestamp.class).toLocalDateTime();
+        if (events.size() > pageSize && exchange.getProperty(CATCH_UP_INSTANT) == null) {
+            LocalDateTime next = events.get(pageSize).changedAt();
+            int end = pageSize;
+            while (end > 0 && !events.get(end - 1).changedAt().isBefore(next)) {
+                end--;
+            }
+            if (end == 0) {
+                exchange.getIn().setHeader("since", Timestamp.valueOf(next));
+                exchange.getIn().setHeader("until", Timestamp.valueOf(next.plusNanos(1)));
+                exchange.setProperty(CATCH_UP_INSTANT, true);
+                return;
+            }
+            events = events.subList(0, end);
+            until = next;
+        }
+        exchange.getMessage().setBody(new ChangeBatch(until.toString(), events));
+    }
+
+    /**
+     * Waits, holding the lock, until the condition holds or the time is up, and returns the time left.
+     * Past the waiter limit it does not wait and sets the Retry-After header instead.
+     */
+    private long waitFor(BooleanSupplier condition, long remaining, Exchange exchange) throws InterruptedException {
+        if (condition.getAsBoolean() || remaining <= 0) {
+            return remaining;
+        }
+        if (waiters >= maxWaiters) {
+            exchange.getMessage().setHeader("Retry-After", retryAfterSeconds);
+            return 0;
+        }
+        waiters++;
+        try {
+            while (!condition.getAsBoolean() && remaining > 0) {
+                remaining = advanced.awaitNanos(remaining);
+            }
+            return remaining;
+        } finally {
+            waiters--;
+        }
+    }
+
+    private List<ChangeEvent> eventsSince(LocalDateTime cursor) {
+        List<ChangeEvent> events = new ArrayList<>();
+        Iterator<ChangeEvent> newestFirst = buffer.descendingIterator();
+        while (newestFirst.hasNext()) {
+            ChangeEvent event = newestFirst.next();
+            if (event.changedAt().isBefore(cursor)) {
+                break;
+            }
+            events.add(event);
+        }
+        Collections.reverse(events);
+        return events;
+    }
+
+    private static List<ChangeEvent> toEvents(List<Map<String, Object>> rows) {
+        List<ChangeEvent> events = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            events.add(new ChangeEvent(
+                (String) row.get("ENTITY"),
+                (Integer) row.get("ID"),
+                (String) row.get("CHANGE"),
+                ((Timestamp) row.get("CHANGED_AT")).toLocalDateTime(),
+                (Integer) row.get("UPDATED_TO_ID")));
+        }
+        return events;
+    }
+
+    record ChangeBatch(
+        @JsonProperty("cursor") String cursor,
+        @JsonProperty("changes") List<ChangeEvent> changes) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ChangeEvent(
+        @JsonProperty("entity") String entity,
+        @JsonProperty("id") Integer id,
+        @JsonProperty("change") String change,
+        @JsonIgnore LocalDateTime changedAt,
+        @JsonProperty("updated_to_id") Integer updatedToId) {
+
+        @JsonProperty("changed_at")
+        String changedAtText() {
+            return changedAt.toString();
+        }
+    }
+}
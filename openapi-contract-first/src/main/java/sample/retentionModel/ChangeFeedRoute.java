@@ -0,0 +1,116 @@
+package sample.retentionModel;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.rest.RestParamType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Change feed of models and policies for downstream enforcers. {@code GET /changes?cursor=&wait=}
+ * returns the creates, updates and deletes after the cursor, together with the cursor to pass next.
+ * When there is nothing new the request is held for up to {@code wait} seconds. Without a cursor
+ * the feed starts at the current position. A subscriber behind the in-memory buffer is answered a
+ * page at a time from the database.
+ */
+@Component
+public class ChangeFeedRoute extends RouteBuilder {
+
+    // An update inserts the new version (CREATED) and deletes the old one with updated_to_id set (UPDATED).
+    // Read through the *All views, so that cursors older than the last compaction still see every change.
+    private static final String CHANGES = "sql:"
+        + "SELECT 'model' AS entity, id, 'CREATED' AS change, created_at AS changed_at, CAST(NULL AS INTEGER) AS updated_to_id "
+        + "FROM RetentionModelAll WHERE created_at >= :#since AND created_at < :#until "
+        + "UNION ALL "
+        + "SELECT 'model', id, CASE WHEN updated_to_id IS NULL THEN 'DELETED' ELSE 'UPDATED' END, deleted_at, updated_to_id "
+        + "FROM RetentionModelAll WHERE deleted_at >= :#since AND deleted_at < :#until "
+        + "UNION ALL "
+        + "SELECT 'policy', id, 'CREATED', created_at, CAST(NULL AS INTEGER) "
+        + "FROM RetentionPolicyAll WHERE created_at >= :#since AND created_at < :#until "
+        + "UNION ALL "
+        + "SELECT 'policy', id, CASE WHEN updated_to_id IS NULL THEN 'DELETED' ELSE 'UPDATED' END, deleted_at, updated_to_id "
+        + "FROM RetentionPolicyAll WHERE deleted_at >= :#since AND deleted_at < :#until "
+        + "ORDER BY changed_at, entity, id";
+    private static final String CHANGES_PAGE = CHANGES + " LIMIT :#limit";
+
+    private final ChangeFeed changeFeed;
+    private final Bulkhead bulkhead;
+
+    public ChangeFeedRoute(ChangeFeed changeFeed, Bulkhead bulkhead) {
+        this.changeFeed = changeFeed;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public void configure() throws Exception {
+
+        onException(SQLException.class)
+            .handled(true)
+            .log(LoggingLevel.ERROR, "Database error: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"An error occurred while processing your request.\", \"suggestion\": \"Please try again later. Our developers have been notified of this issue.\"}")
+            .end();
+
+        // Hikari gave up waiting for a free connection: the pool is exhausted, so ask the client to come back
+        onException(SQLTransientConnectionException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "No database connection available: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(503))
+            .setHeader("Retry-After", constant(1))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"The service is temporarily overloaded.\", \"suggestion\": \"Please retry after 1 second.\"}")
+            .end();
+
+        onException(BulkheadFullException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "Request rejected: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(429))
+            .setHeader("Retry-After", simple("${exception.retryAfterSeconds}"))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"Too many concurrent requests.\", \"suggestion\": \"Please retry after ${exception.retryAfterSeconds} seconds.\"}")
+            .end();
+
+        // General exception handler
+        onException(Exception.class)
+            .handled(true)
+            .log(LoggingLevel.ERROR, "Unexpected error: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"An error occurred while processing your request.\", \"suggestion\": \"Please try again later. Our developers have been notified of this issue.\"}")
+            .end();
+
+        rest("/changes")
+            .get()
+                .param().name("cursor").type(RestParamType.query).dataType("string").required(false).endParam()
+                .param().name("wait").type(RestParamType.query).dataType("integer").required(false).endParam()
+                .to("direct:getChanges");
+
+        // The only query of the feed, whatever the number of subscribers. The window ends a settle delay
+        // behind the database clock, so rows of transactions still open at that time are read in a later window.
+        from("timer:changeFeed?period={{retention.changes.poll-interval:500}}").routeId("pollChanges")
+            .to("sql:SELECT DATEADD(MILLISECOND, -{{retention.changes.settle-delay:2000}}, LOCALTIMESTAMP) AS until?outputType=SelectOne&outputHeader=until")
+            .process(changeFeed::window)
+            .filter(header("since").isNotNull())
+                .to(CHANGES)
+                .process(changeFeed::append)
+            .end();
+
+        from("direct:getChanges").routeId("getChanges")
+            .process(changeFeed::await)
+            // A held request waits on the buffer without a connection, so only the catch-up counts against the bulkhead
+            .filter(exchangeProperty(ChangeFeed.CATCH_UP).isNotNull())
+                .process(bulkhead::enter)
+                .to(CHANGES_PAGE)
+                .process(changeFeed::catchUp)
+                // Only when one instant holds more than a page; the rows of a single instant are read whole
+                .filter(exchangeProperty(ChangeFeed.CATCH_UP_INSTANT).isNotNull())
+                    .to(CHANGES)
+                    .process(changeFeed::catchUp)
+                .end()
+            .end();
+    }
+}
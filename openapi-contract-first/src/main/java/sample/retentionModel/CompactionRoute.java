@@ -0,0 +1,129 @@
+package sample.retentionModel;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves superseded and deleted versions out of {@code RetentionModel} and {@code RetentionPolicy}
+ * into their history tables, so that the live queries scan only live rows. Each batch is copied and
+ * deleted in one short transaction, and batches are spaced out to leave the database to live
+ * traffic. A dead row is never modified again, so the job can be stopped at any point and simply
+ * continues with the remaining rows on its next run.
+ *
+ * <p>Policies are compacted first. A model is only moved once no row of {@code RetentionPolicy}
+ * references it, which the foreign key requires.
+ */
+@Component
+public class CompactionRoute extends RouteBuilder {
+
+    private static final String POLICY_COLUMNS = "id, retention_model_id, retention_period, action, tenant, created_by, created_at, deleted_by, deleted_at, updated_to_id";
+    private static final String MODEL_COLUMNS = "id, name, ownership, description, retention_period, sensitive_fields, created_by, created_at, deleted_by, deleted_at, updated_to_id";
+
+    @Value("${retention.compaction.batch-size:500}")
+    private int batchSize;
+
+    @Value("${retention.compaction.max-batches:100}")
+    private int maxBatches;
+
+    @Value("${retention.compaction.batch-delay:PT0.1S}")
+    private Duration batchDelay;
+
+    @Value("${retention.compaction.min-age:PT1H}")
+    private Duration minAge;
+
+    @Override
+    public void configure() throws Exception {
+
+        // A failed batch is rolled back and retried on the next run
+        onException(Exception.class)
+            .handled(true)
+            .log(LoggingLevel.ERROR, "Compaction batch failed: ${exception.message}")
+            .markRollbackOnly()
+            .end();
+
+        from("timer:compaction?delay={{retention.compaction.initial-delay:60000}}&period={{retention.compaction.interval:600000}}")
+            .routeId("compactRetentionHistory")
+            .autoStartup("{{retention.compaction.enabled:true}}")
+            .process(exchange -> {
+                exchange.getIn().setHeader("batch_size", batchSize);
+                exchange.getIn().setHeader("min_age", minAge.toSeconds());
+            })
+            .to("direct:compactRetentionPolicies")
+            .to("direct:compactRetentionModels");
+
+        from("direct:compactRetentionPolicies").routeId("compactRetentionPolicies")
+            .process(this::startBatches)
+            .loopDoWhile(this::hasMoreBatches)
+                .to("direct:compactRetentionPolicyBatch")
+                .process(this::countBatch)
+                .delay(batchDelay.toMillis())
+            .end()
+            .log(LoggingLevel.INFO, "Compacted ${exchangeProperty.compactedTotal} retention policy versions");
+
+        from("direct:compactRetentionPolicyBatch").routeId("compactRetentionPolicyBatch")
+            .transacted()
+            .to("sql:SELECT id FROM RetentionPolicy WHERE deleted_by IS NOT NULL "
+                + "AND deleted_at < DATEADD(SECOND, -CAST(:#min_age AS INTEGER), LOCALTIMESTAMP) "
+                + "ORDER BY deleted_at LIMIT :#batch_size")
+            .process(this::selectIds)
+            .filter(simple("${header.ids.isEmpty()} == false"))
+                .to("sql:INSERT INTO RetentionPolicyHistory (" + POLICY_COLUMNS + ") "
+                    + "SELECT " + POLICY_COLUMNS + " FROM RetentionPolicy WHERE id IN (:#in:ids)")
+                .to("sql:DELETE FROM RetentionPolicy WHERE id IN (:#in:ids)")
+            .end();
+
+        from("direct:compactRetentionModels").routeId("compactRetentionModels")
+            .process(this::startBatches)
+            .loopDoWhile(this::hasMoreBatches)
+                .to("direct:compactRetentionModelBatch")
+                .process(this::countBatch)
+                .delay(batchDelay.toMillis())
+            .end()
+            .log(LoggingLevel.INFO, "Compacted ${exchangeProperty.compactedTotal} retention model versions");
+
+        from("direct:compactRetentionModelBatch").routeId("compactRetentionModelBatch")
+            .transacted()
+            .to("sql:SELECT id FROM RetentionModel m WHERE deleted_by IS NOT NULL "
+                + "AND deleted_at < DATEADD(SECOND, -CAST(:#min_age AS INTEGER), LOCALTIMESTAMP) "
+                + "AND NOT EXISTS (SELECT 1 FROM RetentionPolicy p WHERE p.retention_model_id = m.id) "
+                + "ORDER BY deleted_at LIMIT :#batch_size")
+            .process(this::selectIds)
+            .filter(simple("${header.ids.isEmpty()} == false"))
+                .to("sql:INSERT INTO RetentionModelHistory (" + MODEL_COLUMNS + ") "
+                    + "SELECT " + MODEL_COLUMNS + " FROM RetentionModel WHERE id IN (:#in:ids)")
+                .to("sql:DELETE FROM RetentionModel WHERE id IN (:#in:ids)")
+            .end();
+    }
+
+    private void startBatches(Exchange exchange) {
+        exchange.setProperty("compactionBatches", 0);
+        exchange.setProperty("compactedTotal", 0);
+        exchange.removeProperty("compactedRows");
+    }
+
+    // Continues while the last batch was full and the per-run budget is not used up
+    private boolean hasMoreBatches(Exchange exchange) {
+        Integer compactedRows = exchange.getProperty("compactedRows", Integer.class);
+        return exchange.getProperty("compactionBatches", Integer.class) < maxBatches
+            && (compactedRows == null || compactedRows == batchSize);
+    }
+
+    private void selectIds(Exchange exchange) {
+        List<Map<String, Object>> rows = exchange.getIn().getBody(List.class);
+        exchange.getIn().setHeader("ids", rows.stream().map(row -> row.get("ID")).toList());
+    }
+
+    private void countBatch(Exchange exchange) {
+        int compactedRows = exchange.getIn().getHeader("ids", List.class).size();
+        exchange.setProperty("compactedRows", compactedRows);
+        exchange.setProperty("compactionBatches", exchange.getProperty("compactionBatches", Integer.class) + 1);
+        exchange.setProperty("compactedTotal", exchange.getProperty("compactedTotal", Integer.class) + compactedRows);
+    }
+}
@@ -0,0 +1,67 @@
+package sample.retentionModel;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+
+/**
+ * The policy that applies to a (tenant, retention model) pair, with the retention period already
+ * falling back to the model's period and the model's sensitive fields joined in.
+ */
+record EffectivePolicy(Integer policyId, String tenant, Integer retentionModelId, Integer retentionPeriod, String action, String sensitiveFields) {
+
+    static final String PAIR_TENANTS = "pair_tenants";
+    static final String PAIR_RETENTION_MODEL_IDS = "pair_retention_model_ids";
+
+    static EffectivePolicy fromRow(Map<String, Object> row) {
+        return new EffectivePolicy(
+            (Integer) row.get("ID"),
+            (String) row.get("TENANT"),
+            (Integer) row.get("RETENTION_MODEL_ID"),
+            (Integer) row.get("RETENTION_PERIOD"),
+            (String) row.get("ACTION"),
+            (String) row.get("SENSITIVE_FIELDS"));
+    }
+
+    static String key(String tenant, Integer retentionModelId) {
+        return tenant + '\u0000' + retentionModelId;
+    }
+
+    String key() {
+        return key(tenant, retentionModelId);
+    }
+
+    boolean isAnonymize() {
+        return "ANONYMIZE".equalsIgnoreCase(action);
+    }
+
+    /** Whether the exchange has no pairs to look up. */
+    static boolean hasNoPairs(Exchange exchange) {
+        return exchange.getIn().getHeader(PAIR_TENANTS, String[].class).length == 0;
+    }
+
+    /** Collects the distinct (tenant, retention model) pairs to look up with direct:resolveEffectivePolicies. */
+    static final class Pairs {
+
+        private final Set<String> keys = new HashSet<>();
+        private final List<String> tenants = new ArrayList<>();
+        private final List<Integer> retentionModelIds = new ArrayList<>();
+
+        void add(String tenant, Integer retentionModelId) {
+            if (keys.add(key(tenant, retentionModelId))) {
+                tenants.add(tenant);
+                retentionModelIds.add(retentionModelId);
+            }
+        }
+
+        /** Sets the pair headers, two arrays that the lookup joins position by position. */
+        void setHeaders(Exchange exchange) {
+            exchange.getIn().setHeader(PAIR_TENANTS, tenants.toArray(String[]::new));
+            exchange.getIn().setHeader(PAIR_RETENTION_MODEL_IDS, retentionModelIds.toArray(Integer[]::new));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package sample.retentionModel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.camel.Exchange;
+
+/**
+ * Strong ETags and {@code If-None-Match} handling. Updates always insert a new row, so the
+ * representation of an id never changes while it is live, and the tag of a single model or policy
+ * is derived from its id alone. Collections are tagged with a digest of the ids they contain, or
+ * with the table's write counter.
+ */
+final class EntityTags {
+
+    static final String ETAG = "ETag";
+    static final String IF_NONE_MATCH = "If-None-Match";
+
+    /** Bumped whenever the JSON representation of the rows changes, so that cached copies are not reused. */
+    private static final String REPRESENTATION_VERSION = "1";
+
+    private EntityTags() {
+    }
+
+    /** Tags a single row with the id header. */
+    static void tagEntity(Exchange exchange, String kind) {
+        exchange.getIn().setHeader(ETAG, quote(kind + "-" + REPRESENTATION_VERSION + "-" + exchange.getIn().getHeader("id")));
+    }
+
+    /** Tags a list of rows with a digest of their ids. */
+    static void tagRows(Exchange exchange, String kind) {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        for (Map<String, Object> row : (List<Map<String, Object>>) exchange.getMessage().getBody(List.class)) {
+            buffer.clear();
+            buffer.putInt((Integer) row.get("ID"));
+            digest.update(buffer.array());
+        }
+        exchange.getMessage().setHeader(ETAG, quote(kind + "-" + REPRESENTATION_VERSION + "-" + HexFormat.of().formatHex(digest.digest(), 0, 16)));
+    }
+
+    /** Reads the write counter of a table, for {@link #tagTableVersion}. */
+    static String tableVersion(String table) {
+        return "sql:SELECT version FROM TableVersion WHERE table_name = '" + table + "'?outputType=SelectOne";
+    }
+
+    /**
+     * Bumps the write counter of a table. Every write to the live rows runs it first, inside the
+     * write's transaction: the counter row stays locked until the commit, so versions follow the
+     * commit order and a reader never sees changed rows under an old version. The statement leaves
+     * the body alone.
+     */
+    static String bumpTableVersion(String table) {
+        return "sql:UPDATE TableVersion SET version = version + 1 WHERE table_name = '" + table + "'?noop=true";
+    }
+
+    /**
+     * Tags a page of a table from the table's write counter. It cannot stay the same while the active
+     * rows change, so this is cheap to compute before the page itself is read.
+     */
+    static void tagTableVersion(Exchange exchange, String kind) {
+        String source = exchange.getIn().getBody(Long.class)
+            + "|" + exchange.getIn().getHeader("limit") + "|" + exchange.getIn().getHeader("after_id");
+        byte[] hash = sha256().digest(source.getBytes(StandardCharsets.UTF_8));
+        exchange.getIn().setHeader(ETAG, quote(kind + "-" + REPRESENTATION_VERSION + "-" + HexFormat.of().formatHex(hash, 0, 16)));
+    }
+
+    /** Whether the request's If-None-Match lists the current ETag (weak comparison, as RFC 9110 requires). */
+    static boolean isNotModified(Exchange exchange) {
+        String ifNoneMatch = exchange.getIn().getHeader(IF_NONE_MATCH, String.class);
+        String etag = exchange.getIn().getHeader(ETAG, String.class);
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || Objects.equals(candidate.startsWith("W/") ? candidate.substring(2) : candidate, etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void notModified(Exchange exchange) {
+        exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 304);
+        exchange.getMessage().setBody(null);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
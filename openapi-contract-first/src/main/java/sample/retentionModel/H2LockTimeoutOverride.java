@@ -0,0 +1,20 @@
+package sample.retentionModel;
+
+import java.sql.SQLException;
+
+import org.h2.api.ErrorCode;
+
+import com.zaxxer.hikari.SQLExceptionOverride;
+
+/**
+ * Keeps a pooled connection whose statement timed out waiting for a row lock. H2 reports the lock
+ * timeout as a {@code SQLTimeoutException}, which Hikari otherwise takes for a dead connection and
+ * evicts, so the transaction can no longer be rolled back and a conflict turns into a 500.
+ */
+public class H2LockTimeoutOverride implements SQLExceptionOverride {
+
+    @java.lang.Override
+    public Override adjudicate(SQLException exception) {
+        return exception.getErrorCode() == ErrorCode.LOCK_TIMEOUT_1 ? Override.DO_NOT_EVICT : Override.CONTINUE_EVICT;
+    }
+}
@@ -0,0 +1,58 @@
+package sample.retentionModel;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keyset pagination on {@code id} for the list endpoints. Clients pass {@code limit} and
+ * {@code after_id}; when a page is full, the id to continue from is returned in the
+ * {@code X-Next-After-Id} response header.
+ */
+@Component
+public class KeysetPagination {
+
+    static final String NEXT_AFTER_ID = "X-Next-After-Id";
+
+    private final int defaultLimit;
+    private final int maxLimit;
+
+    public KeysetPagination(@Value("${retention.pagination.default-limit:100}") int defaultLimit,
+                            @Value("${retention.pagination.max-limit:1000}") int maxLimit) {
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /** Normalizes the limit and after_id headers, or answers 400 when they are out of range. */
+    public void parse(Exchange exchange) {
+        Integer limit = exchange.getIn().getHeader("limit", Integer.class);
+        Integer afterId = exchange.getIn().getHeader("after_id", Integer.class);
+
+        if (limit == null) {
+            limit = defaultLimit;
+        }
+        if (afterId == null) {
+            afterId = 0;
+        }
+        if (limit < 1 || limit > maxLimit || afterId < 0) {
+            exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+            exchange.getIn().setBody("limit must be between 1 and " + maxLimit + " and after_id must be non-negative");
+            return;
+        }
+
+        exchange.getIn().setHeader("limit", limit);
+        exchange.getIn().setHeader("after_id", afterId);
+    }
+
+    /** Sets the cursor for the next page when the current page is full. */
+    public void link(Exchange exchange) {
+        List<Map<String, Object>> rows = exchange.getMessage().getBody(List.class);
+        Integer limit = exchange.getMessage().getHeader("limit", Integer.class);
+        if (rows != null && !rows.isEmpty() && limit != null && rows.size() == limit) {
+            exchange.getMessage().setHeader(NEXT_AFTER_ID, rows.get(rows.size() - 1).get("ID"));
+        }
+    }
+}
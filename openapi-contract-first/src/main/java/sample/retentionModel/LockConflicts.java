@@ -0,0 +1,33 @@
+package sample.retentionModel;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+import org.apache.camel.Exchange;
+import org.h2.api.ErrorCode;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Recognizes a failure caused by another transaction holding the same rows: a lock timeout, a
+ * deadlock or a concurrent update. Camel matches onException clauses against the innermost cause
+ * first, and for these H2 reports an internal {@code MVStoreException} wrapped in a
+ * {@code QueryTimeoutException}, so neither the {@link ConcurrencyFailureException} nor the
+ * {@link SQLException} clause would see them. The routes use this as the onWhen of a 409 clause.
+ */
+final class LockConflicts {
+
+    private static final Set<Integer> H2_ERROR_CODES = Set.of(ErrorCode.LOCK_TIMEOUT_1, ErrorCode.DEADLOCK_1, ErrorCode.CONCURRENT_UPDATE_1);
+
+    private LockConflicts() {
+    }
+
+    static boolean isConflict(Exchange exchange) {
+        for (Throwable cause = exchange.getException(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrencyFailureException
+                || cause instanceof SQLException && H2_ERROR_CODES.contains(((SQLException) cause).getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package sample.retentionModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.converter.stream.CachedOutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes a large JSON response into Camel's stream cache instead of building it on the heap.
+ * Once the body grows past the spool threshold it overflows to a temporary file, which is
+ * removed when the exchange completes.
+ */
+final class ResponseSpool {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .findAndRegisterModules()
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final CachedOutputStream out;
+    private final JsonGenerator generator;
+    private final boolean array;
+
+    private ResponseSpool(Exchange exchange, boolean array) throws IOException {
+        this.out = new CachedOutputStream(exchange);
+        this.generator = MAPPER.getFactory().createGenerator(out);
+        this.array = array;
+    }
+
+    /** One JSON document per line (application/x-ndjson). */
+    static ResponseSpool ndjson(Exchange exchange) throws IOException {
+        ResponseSpool spool = new ResponseSpool(exchange, false);
+        spool.generator.setRootValueSeparator(new SerializedString("\n"));
+        return spool;
+    }
+
+    /** A single JSON array whose elements are written one at a time. */
+    static ResponseSpool jsonArray(Exchange exchange) throws IOException {
+        ResponseSpool spool = new ResponseSpool(exchange, true);
+        spool.generator.writeStartArray();
+        return spool;
+    }
+
+    void write(Object value) throws IOException {
+        generator.writeObject(value);
+    }
+
+    /** Completes the document and returns it as a re-readable stream for the response body. */
+    InputStream finish() throws IOException {
+        if (array) {
+            generator.writeEndArray();
+        } else {
+            generator.writeRaw('\n');
+        }
+        generator.close();
+        return out.getWrappedInputStream();
+    }
+}
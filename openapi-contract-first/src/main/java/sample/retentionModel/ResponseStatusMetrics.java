@@ -0,0 +1,61 @@
+package sample.retentionModel;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.platform.http.PlatformHttpEndpoint;
+import org.apache.camel.spi.CamelEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeCompletedEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeEvent;
+import org.apache.camel.spi.CamelEvent.ExchangeFailedEvent;
+import org.apache.camel.support.EventNotifierSupport;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the responses of every REST operation by HTTP status, including the 400, 404, 409 and 500
+ * branches that the routes answer without an exception. Published as {@code retention.http.responses}.
+ */
+@Component
+public class ResponseStatusMetrics extends EventNotifierSupport {
+
+    private final MeterRegistry meterRegistry;
+
+    public ResponseStatusMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void setCamelContext(CamelContext camelContext) {
+        super.setCamelContext(camelContext);
+        // Camel only picks up the event notifiers that already exist when it configures itself
+        if (!camelContext.getManagementStrategy().getEventNotifiers().contains(this)) {
+            camelContext.getManagementStrategy().addEventNotifier(this);
+        }
+    }
+
+    @Override
+    public boolean isEnabled(CamelEvent event) {
+        return event instanceof ExchangeCompletedEvent || event instanceof ExchangeFailedEvent;
+    }
+
+    @Override
+    public void notify(CamelEvent event) {
+        Exchange exchange = ((ExchangeEvent) event).getExchange();
+        if (!(exchange.getFromEndpoint() instanceof PlatformHttpEndpoint endpoint)) {
+            return;
+        }
+        // The exchanges of a split keep the endpoint of the request; only the request itself is a response
+        if (exchange.getProperty(Exchange.CORRELATION_ID) != null || exchange.getProperty(Exchange.SPLIT_INDEX) != null) {
+            return;
+        }
+
+        int status = exchange.isFailed() ? 500 : exchange.getMessage().getHeader(Exchange.HTTP_RESPONSE_CODE, 200, Integer.class);
+        meterRegistry.counter("retention.http.responses",
+                "route", String.valueOf(exchange.getFromRouteId()),
+                "method", String.valueOf(exchange.getMessage().getHeader(Exchange.HTTP_METHOD)),
+                "uri", endpoint.getPath(),
+                "status", String.valueOf(status))
+            .increment();
+    }
+}
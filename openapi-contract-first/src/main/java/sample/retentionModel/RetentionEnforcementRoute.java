@@ -0,0 +1,206 @@
+package sample.retentionModel;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.LoggingLevel;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.rest.RestBindingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Evaluates retention policies against a stream of records. The request body is NDJSON, one
+ * {@code {"tenant", "retention_model_id", "record_id", "created_at"}} object per line, and the
+ * response is NDJSON with one DELETE or ANONYMIZE decision per expired record.
+ */
+@Component
+public class RetentionEnforcementRoute extends RouteBuilder {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    @Value("${retention.enforcement.batch-size:1000}")
+    private int batchSize;
+
+    private final Bulkhead bulkhead;
+
+    public RetentionEnforcementRoute(Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public void configure() throws Exception {
+
+        onException(SQLException.class)
+            .handled(true)
+            .log(LoggingLevel.ERROR, "Database error: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"An error occurred while processing your request.\", \"suggestion\": \"Please try again later. Our developers have been notified of this issue.\"}")
+            .end();
+
+        // Hikari gave up waiting for a free connection: the pool is exhausted, so ask the client to come back
+        onException(SQLTransientConnectionException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "No database connection available: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(503))
+            .setHeader("Retry-After", constant(1))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"The service is temporarily overloaded.\", \"suggestion\": \"Please retry after 1 second.\"}")
+            .end();
+
+        onException(BulkheadFullException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "Request rejected: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(429))
+            .setHeader("Retry-After", simple("${exception.retryAfterSeconds}"))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"Too many concurrent requests.\", \"suggestion\": \"Please retry after ${exception.retryAfterSeconds} seconds.\"}")
+            .end();
+
+        // General exception handler
+        onException(Exception.class)
+            .handled(true)
+            .log(LoggingLevel.ERROR, "Unexpected error: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"An error occurred while processing your request.\", \"suggestion\": \"Please try again later. Our developers have been notified of this issue.\"}")
+            .end();
+
+        rest("/retention_enforcement")
+            .post().consumes("application/x-ndjson").produces("application/x-ndjson").bindingMode(RestBindingMode.off)
+            .to("direct:enforceRetentionPolicies");
+
+        // The body is consumed in batches of lines, and each batch resolves its policies with a single
+        // query. Decisions are spooled through the stream cache so memory stays bounded by the batch size.
+        // Records may name many tenants, so a request only counts against the global limit
+        from("direct:enforceRetentionPolicies").routeId("enforceRetentionPolicies")
+            .process(bulkhead::enter)
+            .process(exchange -> {
+                exchange.setProperty("decisions", ResponseSpool.ndjson(exchange));
+                exchange.setProperty("enforcedAt", Instant.now());
+            })
+            .split(body().tokenize("\n", batchSize, false)).streaming().stopOnException()
+                .process(this::parseBatch)
+                .choice()
+                    .when(EffectivePolicy::hasNoPairs)
+                        .setBody(constant(List.of()))
+                    .otherwise()
+                        .to("direct:resolveEffectivePolicies")
+                .end()
+                .process(this::writeDecisions)
+            .end()
+            .process(exchange -> {
+                ResponseSpool decisions = exchange.getProperty("decisions", ResponseSpool.class);
+                exchange.getMessage().setBody(decisions.finish());
+                exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "application/x-ndjson");
+                exchange.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, 200);
+            });
+
+        // Returns the active policy rows of the pairs in the pair_tenants and pair_retention_model_ids headers.
+        // The two arrays are unnested side by side, so only the requested pairs are read, not every
+        // combination of the tenants and models they mention.
+        from("direct:resolveEffectivePolicies").routeId("resolveEffectivePolicies")
+            .to("sql:SELECT p.id, p.tenant, p.retention_model_id, COALESCE(p.retention_period, m.retention_period) AS retention_period, p.action, m.sensitive_fields "
+                + "FROM UNNEST(CAST(:#pair_tenants AS VARCHAR(255) ARRAY), CAST(:#pair_retention_model_ids AS INTEGER ARRAY)) AS r(tenant, retention_model_id) "
+                + "JOIN RetentionPolicy p ON p.tenant = r.tenant AND p.retention_model_id = r.retention_model_id AND p.deleted_by IS NULL "
+                + "JOIN RetentionModel m ON m.id = p.retention_model_id "
+                + "ORDER BY p.id");
+    }
+
+    private void parseBatch(Exchange exchange) {
+        String lines = exchange.getIn().getBody(String.class);
+        List<EnforcementRecord> records = new ArrayList<>();
+        List<EnforcementDecision> rejected = new ArrayList<>();
+        EffectivePolicy.Pairs pairs = new EffectivePolicy.Pairs();
+
+        for (String line : lines.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            EnforcementRecord record;
+            try {
+                record = MAPPER.readValue(line, EnforcementRecord.class);
+            } catch (JsonProcessingException e) {
+                rejected.add(EnforcementDecision.rejected(null, "Invalid JSON: " + e.getOriginalMessage()));
+                continue;
+            }
+            if (record.tenant() == null || record.retentionModelId() == null || record.createdAt() == null) {
+                rejected.add(EnforcementDecision.rejected(record.recordId(), "tenant, retention_model_id and created_at are required"));
+                continue;
+            }
+            records.add(record);
+            pairs.add(record.tenant(), record.retentionModelId());
+        }
+
+        exchange.setProperty("enforcementRecords", records);
+        exchange.setProperty("rejectedRecords", rejected);
+        pairs.setHeaders(exchange);
+    }
+
+    private void writeDecisions(Exchange exchange) throws Exception {
+        List<Map<String, Object>> rows = exchange.getIn().getBody(List.class);
+        Map<String, EffectivePolicy> policies = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            // Rows are ordered by id, so the newest policy for a pair wins
+            EffectivePolicy policy = EffectivePolicy.fromRow(row);
+            policies.put(policy.key(), policy);
+        }
+
+        ResponseSpool decisions = exchange.getProperty("decisions", ResponseSpool.class);
+        Instant enforcedAt = exchange.getProperty("enforcedAt", Instant.class);
+
+        for (EnforcementDecision rejected : (List<EnforcementDecision>) exchange.getProperty("rejectedRecords", List.class)) {
+            decisions.write(rejected);
+        }
+        for (EnforcementRecord record : (List<EnforcementRecord>) exchange.getProperty("enforcementRecords", List.class)) {
+            EffectivePolicy policy = policies.get(EffectivePolicy.key(record.tenant(), record.retentionModelId()));
+            if (policy == null || policy.retentionPeriod() == null) {
+                continue;
+            }
+            if (record.createdAt().plus(policy.retentionPeriod(), ChronoUnit.DAYS).isAfter(enforcedAt)) {
+                continue;
+            }
+            decisions.write(EnforcementDecision.of(record, policy));
+        }
+    }
+
+    record EnforcementRecord(
+        @JsonProperty("tenant") String tenant,
+        @JsonProperty("retention_model_id") Integer retentionModelId,
+        @JsonProperty("record_id") String recordId,
+        @JsonProperty("created_at") Instant createdAt) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record EnforcementDecision(
+        @JsonProperty("record_id") String recordId,
+        @JsonProperty("tenant") String tenant,
+        @JsonProperty("retention_model_id") Integer retentionModelId,
+        @JsonProperty("policy_id") Integer policyId,
+        @JsonProperty("action") String action,
+        @JsonProperty("sensitive_fields") String sensitiveFields,
+        @JsonProperty("error") String error) {
+
+        static EnforcementDecision of(EnforcementRecord record, EffectivePolicy policy) {
+            return new EnforcementDecision(record.recordId(), record.tenant(), record.retentionModelId(), policy.policyId(),
+                policy.action(), policy.isAnonymize() ? policy.sensitiveFields() : null, null);
+        }
+
+        static EnforcementDecision rejected(String recordId, String error) {
+            return new EnforcementDecision(recordId, null, null, null, null, null, error);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package sample.retentionModel;
 
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
 import java.util.List;
 import java.util.Map;
 
@@ -10,6 +11,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.bean.validator.BeanValidationException;
 import org.apache.camel.component.sql.SqlConstants;
 import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.camel.model.rest.RestParamType;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.core.JsonParseException;
@@ -20,6 +22,16 @@ import sample.retentionModel.model.RetentionModelUpdate;
 @Component
 public class RetentionModelRoute extends RouteBuilder {
 
+    private final RetentionPolicyCache retentionPolicyCache;
+    private final KeysetPagination keysetPagination;
+    private final Bulkhead bulkhead;
+
+    public RetentionModelRoute(RetentionPolicyCache retentionPolicyCache, KeysetPagination keysetPagination, Bulkhead bulkhead) {
+        this.retentionPolicyCache = retentionPolicyCache;
+        this.keysetPagination = keysetPagination;
+        this.bulkhead = bulkhead;
+    }
+
     @Override
     public void configure() throws Exception {
 
@@ -57,6 +69,36 @@ public class RetentionModelRoute extends RouteBuilder {
             .setBody().simple("{\"error\": \"An error occurred while processing your request.\", \"suggestion\": \"Please try again later. Our developers have been notified of this issue.\"}")
             .end();
 
+        // Hikari gave up waiting for a free connection: the pool is exhausted, so ask the client to come back
+        onException(SQLTransientConnectionException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "No database connection available: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(503))
+            .setHeader("Retry-After", constant(1))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"The service is temporarily overloaded.\", \"suggestion\": \"Please retry after 1 second.\"}")
+            .end();
+
+        onException(BulkheadFullException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "Request rejected: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(429))
+            .setHeader("Retry-After", simple("${exception.retryAfterSeconds}"))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"Too many concurrent requests.\", \"suggestion\": \"Please retry after ${exception.retryAfterSeconds} seconds.\"}")
+            .end();
+
+        // Lock timeouts and deadlocks arrive wrapped around an H2 internal exception, see LockConflicts
+        onException(Exception.class)
+            .onWhen(LockConflicts::isConflict)
+            .handled(true)
+            .log(LoggingLevel.WARN, "Concurrent update rejected: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(409))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"The resource was modified by another request.\", \"suggestion\": \"Please fetch the latest version and try again.\"}")
+            .markRollbackOnly()
+            .end();
+
         // General exception handler
         onException(Exception.class)
             .handled(true)
@@ -68,15 +110,25 @@ public class RetentionModelRoute extends RouteBuilder {
 
         rest("/retention-models")
             .post().consumes("application/json").type(RetentionModelCreate.class).to("direct:createRetentionModel")
-            .get().to("direct:getRetentionModels");
+            .get()
+                .param().name("limit").type(RestParamType.query).dataType("integer").required(false).endParam()
+                .param().name("after_id").type(RestParamType.query).dataType("integer").required(false).endParam()
+                .to("direct:getRetentionModels");
+
+        rest("/retention-models/export")
+            .get().produces("application/json").bindingMode(RestBindingMode.off).to("direct:exportRetentionModels");
 
         rest("/retention-models/{id}")
             .get().to("direct:getRetentionModelById")
             .put().consumes("application/json").type(RetentionModelUpdate.class).to("direct:updateRetentionModelById")
             .delete().to("direct:deleteRetentionModelById");
 
-        from("direct:createRetentionModel")
+        rest("/retention-models/{id}/history")
+            .get().to("direct:getRetentionModelHistory");
+
+        from("direct:createRetentionModel").routeId("createRetentionModel")
             .to("bean-validator:RetentionModelCreate")
+            .process(bulkhead::enter)
             .process(exchange -> {
                 // Set the headers from the request body
                 RetentionModelCreate retentionModelCreate = exchange.getIn().getBody(RetentionModelCreate.class);
@@ -92,7 +144,7 @@ public class RetentionModelRoute extends RouteBuilder {
                 // Ask the SQL component to retrieve the generated keys
                 exchange.getIn().setHeader("CamelSqlRetrieveGeneratedKeys", "true");
             })
-            .to("sql:INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (:#name, :#ownership, :#description, :#retention_period, :#sensitive_fields, :#created_by)")
+            .to("direct:insertRetentionModel")
             .process(exchange -> {
                 // Retrieve the generated key from the header
                 List<Map<String, Object>> generatedKeys = exchange.getMessage().getHeader(SqlConstants.SQL_GENERATED_KEYS_DATA, List.class);
@@ -104,76 +156,145 @@ public class RetentionModelRoute extends RouteBuilder {
                 }
             });
 
-        from("direct:getRetentionModels")
-            .to("sql:SELECT * FROM RetentionModel WHERE deleted_by IS NULL");
+        from("direct:insertRetentionModel").routeId("insertRetentionModel")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionModel"))
+            .to("sql:INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) "
+                + "VALUES (:#name, :#ownership, :#description, :#retention_period, :#sensitive_fields, :#created_by)");
 
-        from("direct:getRetentionModelById")
-            .to("sql:SELECT * FROM RetentionModel WHERE id = :#${header.id} AND deleted_by IS NULL?outputType=SelectOne")
+        from("direct:getRetentionModels").routeId("getRetentionModels")
+            .process(bulkhead::enter)
+            .process(keysetPagination::parse)
             .choice()
-                .when(simple("${body} != null"))
-                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(200))
+                .when(header(Exchange.HTTP_RESPONSE_CODE).isEqualTo(400))
+                    .stop()
+            .end()
+            .to(EntityTags.tableVersion("RetentionModel"))
+            .process(exchange -> EntityTags.tagTableVersion(exchange, "models"))
+            .choice()
+                .when(EntityTags::isNotModified)
+                    .process(EntityTags::notModified)
+                .otherwise()
+                    .to("sql:SELECT * FROM RetentionModel WHERE id > :#after_id AND deleted_by IS NULL ORDER BY id LIMIT :#limit")
+                    .process(keysetPagination::link)
+            .end();
+
+        // Walks the JDBC cursor row by row and spools the JSON array instead of materializing the result set
+        from("direct:exportRetentionModels").routeId("exportRetentionModels")
+            .process(bulkhead::enter)
+            .to("sql:SELECT * FROM RetentionModel WHERE deleted_by IS NULL ORDER BY id?outputType=StreamList")
+            .process(exchange -> exchange.setProperty("exportedRows", ResponseSpool.jsonArray(exchange)))
+            .split(body()).streaming().stopOnException()
+                .process(exchange -> exchange.getProperty("exportedRows", ResponseSpool.class).write(exchange.getIn().getBody()))
+            .end()
+            .process(exchange -> {
+                exchange.getMessage().setBody(exchange.getProperty("exportedRows", ResponseSpool.class).finish());
+                exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "application/json");
+            });
+
+        from("direct:getRetentionModelById").routeId("getRetentionModelById")
+            .process(bulkhead::enter)
+            .process(exchange -> EntityTags.tagEntity(exchange, "model"))
+            .choice()
+                .when(EntityTags::isNotModified)
+                    // The client already has this version, so only check that it is still live
+                    .to("sql:SELECT id FROM RetentionModel WHERE id = :#${header.id} AND deleted_by IS NULL?outputType=SelectOne")
                 .otherwise()
+                    .to("sql:SELECT * FROM RetentionModel WHERE id = :#${header.id} AND deleted_by IS NULL?outputType=SelectOne")
+            .end()
+            .choice()
+                .when(simple("${body} == null"))
                     .setBody(constant("Retention model not found or deleted"))
                     .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
+                    .removeHeader(EntityTags.ETAG)
+                .when(EntityTags::isNotModified)
+                    .process(EntityTags::notModified)
+                .otherwise()
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(200))
+            .end();
+
+        // Follows updated_to_id forwards to the newer versions (direction 1) and backwards to the older ones (-1).
+        // One recursive query for both directions: H2 fails on two recursive queries over the same *All view.
+        from("direct:getRetentionModelHistory").routeId("getRetentionModelHistory")
+            .process(bulkhead::enter)
+            .to("sql:WITH RECURSIVE versions(id, updated_to_id, direction) AS ("
+                + "SELECT id, updated_to_id, 0 FROM RetentionModelAll WHERE id = :#${header.id} "
+                + "UNION ALL SELECT t.id, t.updated_to_id, CASE WHEN t.id = v.updated_to_id THEN 1 ELSE -1 END FROM RetentionModelAll t JOIN versions v "
+                + "ON (v.direction >= 0 AND t.id = v.updated_to_id) OR (v.direction <= 0 AND t.updated_to_id = v.id)) "
+                + "SELECT * FROM RetentionModelAll WHERE id IN (SELECT id FROM versions) ORDER BY id")
+            .choice()
+                .when(simple("${body.isEmpty()}"))
+                    .setBody(constant("Retention model not found"))
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
             .end();
 
-        from("direct:updateRetentionModelById")
+        from("direct:updateRetentionModelById").routeId("updateRetentionModelById")
             .to("bean-validator:RetentionModelUpdate")
+            .process(bulkhead::enter)
             .process(exchange -> {
-                Integer oldId = exchange.getIn().getHeader("id", Integer.class);
-                exchange.getIn().setHeader("oldId", oldId);
-
                 RetentionModelUpdate retentionModelUpdate = exchange.getIn().getBody(RetentionModelUpdate.class);
-                exchange.setProperty("retentionModelUpdate", retentionModelUpdate);
+
+                exchange.getIn().setHeader("oldId", exchange.getIn().getHeader("id", Integer.class));
+                exchange.getIn().setHeader("name", retentionModelUpdate.getName());
+                exchange.getIn().setHeader("ownership", retentionModelUpdate.getOwnership());
+                exchange.getIn().setHeader("description", retentionModelUpdate.getDescription());
+                exchange.getIn().setHeader("retention_period", retentionModelUpdate.getRetentionPeriod());
+                exchange.getIn().setHeader("sensitive_fields", retentionModelUpdate.getSensitiveFields());
+                exchange.getIn().setHeader("created_by", "user1");
+                exchange.getIn().setHeader("deleted_by", "user1");
             })
-            .to("sql:SELECT COUNT(*) FROM RetentionPolicy WHERE retention_model_id = :#oldId AND deleted_by IS NULL?outputType=SelectOne")
+            .to("direct:versionRetentionModel")
+            .process(exchange -> retentionPolicyCache.evictModel(exchange.getIn().getHeader("oldId", Integer.class)));
+
+        // Copies the live, unreferenced row into a new version, taking the changed columns from the headers,
+        // and retires the old row in the same transaction. The retiring UPDATE only matches a live row, so
+        // when a concurrent update retired it first the new version is rolled back and the caller gets 409.
+        from("direct:versionRetentionModel").routeId("versionRetentionModel")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionModel"))
+            .setHeader("CamelSqlRetrieveGeneratedKeys", constant(true))
+            .to("sql:INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) "
+                + "SELECT COALESCE(CAST(:#name AS VARCHAR), m.name), COALESCE(CAST(:#ownership AS VARCHAR), m.ownership), COALESCE(CAST(:#description AS VARCHAR), m.description), "
+                + "COALESCE(CAST(:#retention_period AS INTEGER), m.retention_period), COALESCE(CAST(:#sensitive_fields AS VARCHAR), m.sensitive_fields), :#created_by "
+                + "FROM RetentionModel m WHERE m.id = :#oldId AND m.deleted_by IS NULL "
+                + "AND NOT EXISTS (SELECT 1 FROM RetentionPolicy p WHERE p.retention_model_id = m.id AND p.deleted_by IS NULL)")
             .choice()
-                .when(body().isGreaterThan(0))
-                    .setBody(constant("Retention model is referenced by a policy, update not allowed"))
-                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(400))
-                    .stop()
-                .otherwise()
-                    .to("sql:SELECT * FROM RetentionModel WHERE id = :#oldId AND deleted_by IS NULL?outputType=SelectOne")
-                    .filter(simple("${body} == null"))
-                        .setBody(constant("Retention model not found or deleted"))
-                        .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
-                        .stop()
+                .when(header(SqlConstants.SQL_UPDATE_COUNT).isEqualTo(0))
+                    // Nothing was copied, so find out why; this only runs on the failure path
+                    .to("sql:SELECT COUNT(*) FROM RetentionPolicy WHERE retention_model_id = :#oldId AND deleted_by IS NULL?outputType=SelectOne")
+                    .choice()
+                        .when(body().isGreaterThan(0))
+                            .setBody(constant("Retention model is referenced by a policy, update not allowed"))
+                            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(400))
+                            .stop()
                     .end()
-                    .process(exchange -> {
-                        Map<String, Object> existingModel = exchange.getIn().getBody(Map.class);
-                        
-                        RetentionModelUpdate retentionModelUpdate = exchange.getProperty("retentionModelUpdate", RetentionModelUpdate.class);
-
-                        String name = retentionModelUpdate.getName() != null ? retentionModelUpdate.getName() : (String) existingModel.get("NAME");
-                        String ownership = retentionModelUpdate.getOwnership() != null ? retentionModelUpdate.getOwnership() : (String) existingModel.get("OWNERSHIP");
-                        String description = retentionModelUpdate.getDescription() != null ? retentionModelUpdate.getDescription() : (String) existingModel.get("DESCRIPTION");
-                        Integer retentionPeriod = retentionModelUpdate.getRetentionPeriod() != null ? retentionModelUpdate.getRetentionPeriod() : (Integer) existingModel.get("RETENTION_PERIOD");
-                        String sensitiveFields = retentionModelUpdate.getSensitiveFields() != null ? retentionModelUpdate.getSensitiveFields() : (String) existingModel.get("SENSITIVE_FIELDS");
-
-                        exchange.getIn().setHeader("name", name);
-                        exchange.getIn().setHeader("ownership", ownership);
-                        exchange.getIn().setHeader("description", description);
-                        exchange.getIn().setHeader("retention_period", retentionPeriod);
-                        exchange.getIn().setHeader("sensitive_fields", sensitiveFields);
-                        exchange.getIn().setHeader("created_by", "user1");
-                        exchange.getIn().setHeader("CamelSqlRetrieveGeneratedKeys", "true");
-                    })
-                    .to("sql:INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (:#${header.name}, :#${header.ownership}, :#${header.description}, :#${header.retention_period}, :#${header.sensitive_fields}, :#${header.created_by})")
-                    .process(exchange -> {
-                        List<Map<String, Object>> generatedKeys = exchange.getMessage().getHeader(SqlConstants.SQL_GENERATED_KEYS_DATA, List.class);
-                        if (generatedKeys != null) {
-                            Object generatedKey = generatedKeys.get(0).values().iterator().next();
-                            exchange.getMessage().setBody(generatedKey);
-                        }
-                    })
-                    .process(exchange -> {
-                        exchange.getIn().setHeader("newid", exchange.getMessage().getBody(Integer.class));
-                        exchange.getIn().setHeader("deleted_by", "user1");
-                    })
-                    .to("sql:UPDATE RetentionModel SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP, updated_to_id =:#newId WHERE id = :#oldId")
-                .end();
-
-            from("direct:deleteRetentionModelById")
+                    // A row that another update already replaced is a conflict, not a miss
+                    .to("sql:SELECT updated_to_id FROM RetentionModelAll WHERE id = :#oldId?outputType=SelectOne")
+                    .choice()
+                        .when(body().isNotNull())
+                            .setBody(constant("Retention model was updated concurrently, fetch the latest version and try again"))
+                            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(409))
+                        .otherwise()
+                            .setBody(constant("Retention model not found or deleted"))
+                            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
+                    .end()
+                    .stop()
+            .end()
+            .process(exchange -> {
+                List<Map<String, Object>> generatedKeys = exchange.getMessage().getHeader(SqlConstants.SQL_GENERATED_KEYS_DATA, List.class);
+                exchange.getIn().setHeader("newId", generatedKeys.get(0).values().iterator().next());
+            })
+            .to("sql:UPDATE RetentionModel SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP, updated_to_id = :#newId WHERE id = :#oldId AND deleted_by IS NULL")
+            .choice()
+                .when(header(SqlConstants.SQL_UPDATE_COUNT).isEqualTo(0))
+                    .setBody(constant("Retention model was updated concurrently, fetch the latest version and try again"))
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(409))
+                    .markRollbackOnly()
+            .end()
+            .setBody(header("newId"));
+
+            from("direct:deleteRetentionModelById").routeId("deleteRetentionModelById")
+            .process(bulkhead::enter)
             .setHeader("deleted_by", constant("user2"))
             .to("sql:SELECT COUNT(*) FROM RetentionPolicy WHERE retention_model_id = :#id AND deleted_by IS NULL?outputType=SelectOne")
             .choice()
@@ -181,7 +302,7 @@ public class RetentionModelRoute extends RouteBuilder {
                     .setBody(constant("Retention model is referenced by a policy, deletion not allowed"))
                     .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(400))
                 .otherwise()
-                    .to("sql:UPDATE RetentionModel SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP WHERE id = :#id AND deleted_by IS NULL")
+                    .to("direct:softDeleteRetentionModel")
                     .choice()
                         .when(header(SqlConstants.SQL_UPDATE_COUNT).isEqualTo(1))
                             .setBody(constant("Retention model soft deleted successfully"))
@@ -192,5 +313,10 @@ public class RetentionModelRoute extends RouteBuilder {
                             .setBody(constant("Unexpected error occurred during deletion"))
                             .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500))
             .end();
+
+        from("direct:softDeleteRetentionModel").routeId("softDeleteRetentionModel")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionModel"))
+            .to("sql:UPDATE RetentionModel SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP WHERE id = :#id AND deleted_by IS NULL");
     }
 }
\ No newline at end of file
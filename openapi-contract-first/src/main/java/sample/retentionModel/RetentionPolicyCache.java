@@ -0,0 +1,139 @@
+package sample.retentionModel;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-memory cache of active retention policies, keyed by tenant and by id. Entries are bounded by
+ * size and age, and the write routes evict exactly the entries they change. Hit, miss and eviction
+ * counts are published as the {@code cache.*} actuator metrics.
+ *
+ * <p>A reader that misses may have queried the old rows just before a writer evicted them. Every
+ * eviction therefore advances an invalidation generation first. A lookup that misses records the
+ * generation, and a store that finds it advanced drops the entry it just put.
+ */
+@Component
+public class RetentionPolicyCache {
+
+    static final String CACHE_HIT = "retentionPolicyCacheHit";
+    static final String CACHE_GENERATION = "retentionPolicyCacheGeneration";
+
+    private final Cache<String, List<Map<String, Object>>> policiesByTenant;
+    private final Cache<Integer, Map<String, Object>> policiesById;
+    private final AtomicLong generation = new AtomicLong();
+
+    public RetentionPolicyCache(MeterRegistry meterRegistry,
+                                @Value("${retention.cache.maximum-size:10000}") long maximumSize,
+                                @Value("${retention.cache.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.policiesByTenant = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+        this.policiesById = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, policiesByTenant, "retentionPoliciesByTenant");
+        CaffeineCacheMetrics.monitor(meterRegistry, policiesById, "retentionPoliciesById");
+    }
+
+    /** Sets the body to the cached policies of the tenant header and flags the exchange on a hit. */
+    public void lookupByTenant(Exchange exchange) {
+        List<Map<String, Object>> policies = policiesByTenant.getIfPresent(exchange.getIn().getHeader("tenant", String.class));
+        if (policies != null) {
+            exchange.getMessage().setBody(policies);
+            exchange.setProperty(CACHE_HIT, true);
+        } else {
+            exchange.setProperty(CACHE_GENERATION, generation.get());
+        }
+    }
+
+    public void storeByTenant(Exchange exchange) {
+        String tenant = exchange.getIn().getHeader("tenant", String.class);
+        List<Map<String, Object>> policies = exchange.getMessage().getBody(List.class);
+        if (policies != null) {
+            policiesByTenant.put(tenant, Collections.unmodifiableList(policies));
+            if (isStale(exchange)) {
+                policiesByTenant.invalidate(tenant);
+            }
+        }
+    }
+
+    /** Sets the body to the cached policy of the id header and flags the exchange on a hit. */
+    public void lookupById(Exchange exchange) {
+        Integer id = exchange.getIn().getHeader("id", Integer.class);
+        Map<String, Object> policy = id != null ? policiesById.getIfPresent(id) : null;
+        if (policy != null) {
+            exchange.getMessage().setBody(policy);
+            exchange.setProperty(CACHE_HIT, true);
+        } else {
+            exchange.setProperty(CACHE_GENERATION, generation.get());
+        }
+    }
+
+    public void storeById(Exchange exchange) {
+        Integer id = exchange.getIn().getHeader("id", Integer.class);
+        Map<String, Object> policy = exchange.getMessage().getBody(Map.class);
+        if (id != null && policy != null) {
+            policiesById.put(id, Collections.unmodifiableMap(policy));
+            if (isStale(exchange)) {
+                policiesById.invalidate(id);
+            }
+        }
+    }
+
+    /**
+     * Whether an eviction happened since the lookup that missed. Checked after the put, so an
+     * eviction racing with the put either sees the entry or is seen here.
+     */
+    private boolean isStale(Exchange exchange) {
+        Long lookupGeneration = exchange.getProperty(CACHE_GENERATION, Long.class);
+        return lookupGeneration == null || lookupGeneration != generation.get();
+    }
+
+    public void evictTenant(String tenant) {
+        if (tenant != null) {
+            generation.incrementAndGet();
+            policiesByTenant.invalidate(tenant);
+        }
+    }
+
+    /** Evicts the policy and every tenant list that contains it. */
+    public void evictPolicy(Integer id) {
+        if (id == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        policiesById.invalidate(id);
+        policiesByTenant.asMap().values().removeIf(policies ->
+            policies.stream().anyMatch(policy -> Objects.equals(policy.get("ID"), id)));
+    }
+
+    /** Evicts every cached policy that refers to the retention model. */
+    public void evictModel(Integer retentionModelId) {
+        if (retentionModelId == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        policiesById.asMap().values().removeIf(policy -> Objects.equals(policy.get("RETENTION_MODEL_ID"), retentionModelId));
+        policiesByTenant.asMap().values().removeIf(policies ->
+            policies.stream().anyMatch(policy -> Objects.equals(policy.get("RETENTION_MODEL_ID"), retentionModelId)));
+    }
+}
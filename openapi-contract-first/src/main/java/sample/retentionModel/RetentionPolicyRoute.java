@@ -1,25 +1,67 @@
 package sample.retentionModel;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.camel.Exchange;
 import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.bean.validator.BeanValidationException;
 import org.apache.camel.component.sql.SqlConstants;
 import org.apache.camel.model.rest.RestBindingMode;
+import org.apache.camel.model.rest.RestParamType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 
 import sample.retentionModel.policy.RetentionPolicyCreate;
+import sample.retentionModel.policy.RetentionPolicyResolvePair;
 import sample.retentionModel.policy.RetentionPolicyUpdate;
 
 @Component
 public class RetentionPolicyRoute extends RouteBuilder {
 
+    private static final ObjectMapper MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    @Value("${retention.resolve.max-pairs:10000}")
+    private int maxResolvePairs;
+
+    @Value("${retention.batch.max-items:1000}")
+    private int maxBatchItems;
+
+    private final RetentionPolicyCache retentionPolicyCache;
+    private final KeysetPagination keysetPagination;
+    private final Validator validator;
+    private final Bulkhead bulkhead;
+
+    public RetentionPolicyRoute(RetentionPolicyCache retentionPolicyCache, KeysetPagination keysetPagination, Validator validator, Bulkhead bulkhead) {
+        this.retentionPolicyCache = retentionPolicyCache;
+        this.keysetPagination = keysetPagination;
+        this.validator = validator;
+        this.bulkhead = bulkhead;
+    }
+
     @Override
     public void configure() throws Exception {
 
@@ -55,6 +97,36 @@ public class RetentionPolicyRoute extends RouteBuilder {
             .setBody().simple("{\"error\": \"An error occurred while processing your request.\", \"suggestion\": \"Please try again later. Our developers have been notified of this issue.\"}")
             .end();
 
+        // Hikari gave up waiting for a free connection: the pool is exhausted, so ask the client to come back
+        onException(SQLTransientConnectionException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "No database connection available: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(503))
+            .setHeader("Retry-After", constant(1))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"The service is temporarily overloaded.\", \"suggestion\": \"Please retry after 1 second.\"}")
+            .end();
+
+        onException(BulkheadFullException.class)
+            .handled(true)
+            .log(LoggingLevel.WARN, "Request rejected: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(429))
+            .setHeader("Retry-After", simple("${exception.retryAfterSeconds}"))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"Too many concurrent requests.\", \"suggestion\": \"Please retry after ${exception.retryAfterSeconds} seconds.\"}")
+            .end();
+
+        // Lock timeouts and deadlocks arrive wrapped around an H2 internal exception, see LockConflicts
+        onException(Exception.class)
+            .onWhen(LockConflicts::isConflict)
+            .handled(true)
+            .log(LoggingLevel.WARN, "Concurrent update rejected: ${exception.message}")
+            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(409))
+            .setHeader(Exchange.CONTENT_TYPE, constant("application/json"))
+            .setBody().simple("{\"error\": \"The resource was modified by another request.\", \"suggestion\": \"Please fetch the latest version and try again.\"}")
+            .markRollbackOnly()
+            .end();
+
         // General exception handler
         onException(Exception.class)
             .handled(true)
@@ -70,17 +142,35 @@ public class RetentionPolicyRoute extends RouteBuilder {
 
         rest("/retention_policies")
             .post().consumes("application/json").type(RetentionPolicyCreate.class).to("direct:createRetentionPolicy")
-            .get().to("direct:getRetentionPolicies");
+            .get()
+                .param().name("limit").type(RestParamType.query).dataType("integer").required(false).endParam()
+                .param().name("after_id").type(RestParamType.query).dataType("integer").required(false).endParam()
+                .to("direct:getRetentionPolicies");
+
+        rest("/retention_policies/batch")
+            .post().consumes("application/json").type(RetentionPolicyCreate[].class)
+                .param().name("all_or_nothing").type(RestParamType.query).dataType("boolean").required(false).endParam()
+                .to("direct:createRetentionPoliciesBatch");
+
+        rest("/retention_policies/resolve")
+            .post().consumes("application/json").produces("application/json").bindingMode(RestBindingMode.off)
+            .to("direct:resolveRetentionPolicies");
+
+        rest("/retention_policies/export")
+            .get().produces("application/json").bindingMode(RestBindingMode.off).to("direct:exportRetentionPolicies");
 
         rest("/retention_policies/{id}")
             .get().to("direct:getRetentionPolicyById")
             .put().consumes("application/json").type(RetentionPolicyUpdate.class).to("direct:updateRetentionPolicyById")
             .delete().to("direct:deleteRetentionPolicyById");
 
+        rest("/retention_policies/{id}/history")
+            .get().to("direct:getRetentionPolicyHistory");
+
         rest("/retention_policies/byTenant/{tenant}")
             .get().to("direct:getRetentionPoliciesByTenant");
 
-        from("direct:createRetentionPolicy")
+        from("direct:createRetentionPolicy").routeId("createRetentionPolicy")
             .to("bean-validator:validateRetentionPolicyCreate")
             .process(exchange -> {
                 RetentionPolicyCreate retentionPolicyCreate = exchange.getMessage().getBody(RetentionPolicyCreate.class);
@@ -91,7 +181,9 @@ public class RetentionPolicyRoute extends RouteBuilder {
                 exchange.getIn().setHeader("tenant", retentionPolicyCreate.getTenant());
                 exchange.getIn().setHeader("created_by", "user1");
                 exchange.getIn().setHeader("CamelSqlRetrieveGeneratedKeys", true);
+                exchange.setProperty(Bulkhead.TENANT, retentionPolicyCreate.getTenant());
             })
+            .process(bulkhead::enter)
             .to("sql:SELECT retention_period FROM RetentionModel WHERE id = :#retention_model_id?outputType=SelectOne")
             .process(exchange -> {
                 Integer result = exchange.getMessage().getBody(Integer.class);
@@ -109,85 +201,230 @@ public class RetentionPolicyRoute extends RouteBuilder {
                 .when(header(Exchange.HTTP_RESPONSE_CODE).isEqualTo(400))
                     .stop()
                 .otherwise()
-                    .to("sql:INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (:#retention_model_id, :#retention_period, :#action, :#tenant, :#created_by)")
+                    .to("direct:insertRetentionPolicy")
                     .process(exchange -> {
                         List<Map<String, Object>> generatedKeys = exchange.getMessage().getHeader(SqlConstants.SQL_GENERATED_KEYS_DATA, List.class);
                         if (generatedKeys != null && !generatedKeys.isEmpty()) {
                             Object generatedKey = generatedKeys.get(0).values().iterator().next();
                             exchange.getMessage().setBody(generatedKey);
                         }
+                        retentionPolicyCache.evictTenant(exchange.getIn().getHeader("tenant", String.class));
                     });
 
-        from("direct:getRetentionPolicies")
-            .to("sql:SELECT * FROM RetentionPolicy WHERE deleted_by IS NULL");
+        from("direct:insertRetentionPolicy").routeId("insertRetentionPolicy")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionPolicy"))
+            .to("sql:INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (:#retention_model_id, :#retention_period, :#action, :#tenant, :#created_by)");
 
-        from("direct:getRetentionPoliciesByTenant")
+        // Validates every item, checks all referenced models with one query and inserts the valid items
+        // with a single batched statement. Results are returned in request order.
+        from("direct:createRetentionPoliciesBatch").routeId("createRetentionPoliciesBatch")
+            .process(this::validateBatch)
+            .choice()
+                .when(header(Exchange.HTTP_RESPONSE_CODE).isNotNull())
+                    .stop()
+            .end()
+            .process(bulkhead::enter)
+            .choice()
+                .when(simple("${header.retention_model_ids.isEmpty()}"))
+                    .setBody(constant(List.of()))
+                .otherwise()
+                    .to("sql:SELECT id, retention_period FROM RetentionModel WHERE id IN (:#in:retention_model_ids) AND deleted_by IS NULL")
+            .end()
+            .process(this::prepareBatchRows)
+            .choice()
+                .when(simple("${exchangeProperty.batchRejected} == true && ${header.all_or_nothing} == true"))
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(400))
+                    .process(this::abortBatch)
+                .when(simple("${body.isEmpty()}"))
+                    .setBody(exchangeProperty("batchResults"))
+                .otherwise()
+                    .to("direct:insertRetentionPoliciesBatch")
+                    .process(exchange -> {
+                        List<Map<String, Object>> generatedKeys = exchange.getMessage().getHeader(SqlConstants.SQL_GENERATED_KEYS_DATA, List.class);
+                        List<BatchItemResult> results = exchange.getProperty("batchResults", List.class);
+                        List<Integer> insertedIndexes = exchange.getProperty("batchInsertedIndexes", List.class);
+                        for (int i = 0; i < insertedIndexes.size(); i++) {
+                            int index = insertedIndexes.get(i);
+                            Integer id = (Integer) generatedKeys.get(i).values().iterator().next();
+                            results.set(index, BatchItemResult.created(index, id));
+                        }
+                        exchange.getMessage().setBody(results);
+                        exchange.getProperty("batchTenants", Set.class).forEach(tenant -> retentionPolicyCache.evictTenant((String) tenant));
+                    })
+            .end();
+
+        from("direct:insertRetentionPoliciesBatch").routeId("insertRetentionPoliciesBatch")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionPolicy"))
+            .setHeader("CamelSqlRetrieveGeneratedKeys", constant(true))
+            .to("sql:INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (:#retention_model_id, :#retention_period, :#action, :#tenant, :#created_by)?batch=true");
+
+        // Resolves all pairs with one query over the distinct pairs, then streams
+        // one result per pair in request order
+        from("direct:resolveRetentionPolicies").routeId("resolveRetentionPolicies")
+            .process(this::parseResolvePairs)
+            .choice()
+                .when(header(Exchange.HTTP_RESPONSE_CODE).isNotNull())
+                    .stop()
+            .end()
+            .process(bulkhead::enter)
+            .choice()
+                .when(EffectivePolicy::hasNoPairs)
+                    .setBody(constant(List.of()))
+                .otherwise()
+                    .to("direct:resolveEffectivePolicies")
+            .end()
+            .process(this::writeResolutions);
+
+        from("direct:getRetentionPolicies").routeId("getRetentionPolicies")
+            .process(bulkhead::enter)
+            .process(keysetPagination::parse)
+            .choice()
+                .when(header(Exchange.HTTP_RESPONSE_CODE).isEqualTo(400))
+                    .stop()
+            .end()
+            .to(EntityTags.tableVersion("RetentionPolicy"))
+            .process(exchange -> EntityTags.tagTableVersion(exchange, "policies"))
+            .choice()
+                .when(EntityTags::isNotModified)
+                    .process(EntityTags::notModified)
+                .otherwise()
+                    .to("sql:SELECT * FROM RetentionPolicy WHERE id > :#after_id AND deleted_by IS NULL ORDER BY id LIMIT :#limit")
+                    .process(keysetPagination::link)
+            .end();
+
+        // Walks the JDBC cursor row by row and spools the JSON array instead of materializing the result set
+        from("direct:exportRetentionPolicies").routeId("exportRetentionPolicies")
+            .process(bulkhead::enter)
+            .to("sql:SELECT * FROM RetentionPolicy WHERE deleted_by IS NULL ORDER BY id?outputType=StreamList")
+            .process(exchange -> exchange.setProperty("exportedRows", ResponseSpool.jsonArray(exchange)))
+            .split(body()).streaming().stopOnException()
+                .process(exchange -> exchange.getProperty("exportedRows", ResponseSpool.class).write(exchange.getIn().getBody()))
+            .end()
+            .process(exchange -> {
+                exchange.getMessage().setBody(exchange.getProperty("exportedRows", ResponseSpool.class).finish());
+                exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "application/json");
+            });
+
+        from("direct:getRetentionPoliciesByTenant").routeId("getRetentionPoliciesByTenant")
             .process(exchange -> {
                 String tenant = exchange.getIn().getHeader("tenant", String.class);
                 String decodedTenant = java.net.URLDecoder.decode(tenant, StandardCharsets.UTF_8.name());
                 exchange.getIn().setHeader("tenant", decodedTenant);
+                exchange.setProperty(Bulkhead.TENANT, decodedTenant);
             })
-            .to("sql:SELECT * FROM RetentionPolicy WHERE tenant = :#${header.tenant} AND deleted_by IS NULL");
+            .process(retentionPolicyCache::lookupByTenant)
+            .filter(exchangeProperty(RetentionPolicyCache.CACHE_HIT).isNull())
+                .process(bulkhead::enter)
+                .to("sql:SELECT * FROM RetentionPolicy WHERE tenant = :#${header.tenant} AND deleted_by IS NULL")
+                .process(retentionPolicyCache::storeByTenant)
+            .end()
+            .process(exchange -> EntityTags.tagRows(exchange, "tenant-policies"))
+            .filter(EntityTags::isNotModified)
+                .process(EntityTags::notModified)
+            .end();
 
-        from("direct:getRetentionPolicyById")
-            .to("sql:SELECT * FROM RetentionPolicy WHERE id = :#${header.id} AND deleted_by IS NULL?outputType=SelectOne")
+        from("direct:getRetentionPolicyById").routeId("getRetentionPolicyById")
+            .process(exchange -> EntityTags.tagEntity(exchange, "policy"))
+            .process(retentionPolicyCache::lookupById)
+            .filter(exchangeProperty(RetentionPolicyCache.CACHE_HIT).isNull())
+                .process(bulkhead::enter)
+                .choice()
+                    .when(EntityTags::isNotModified)
+                        // The client already has this version, so only check that it is still live
+                        .to("sql:SELECT id FROM RetentionPolicy WHERE id = :#${header.id} AND deleted_by IS NULL?outputType=SelectOne")
+                    .otherwise()
+                        .to("sql:SELECT * FROM RetentionPolicy WHERE id = :#${header.id} AND deleted_by IS NULL?outputType=SelectOne")
+                        .process(retentionPolicyCache::storeById)
+                .end()
+            .end()
             .choice()
-                .when(simple("${body} != null"))
-                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(200))
-                .otherwise()
+                .when(simple("${body} == null"))
                     .setBody(constant("Retention policy not found or deleted"))
                     .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
+                    .removeHeader(EntityTags.ETAG)
+                .when(EntityTags::isNotModified)
+                    .process(EntityTags::notModified)
+                .otherwise()
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(200))
+            .end();
+
+        // Follows updated_to_id forwards to the newer versions (direction 1) and backwards to the older ones (-1).
+        // One recursive query for both directions: H2 fails on two recursive queries over the same *All view.
+        from("direct:getRetentionPolicyHistory").routeId("getRetentionPolicyHistory")
+            .process(bulkhead::enter)
+            .to("sql:WITH RECURSIVE versions(id, updated_to_id, direction) AS ("
+                + "SELECT id, updated_to_id, 0 FROM RetentionPolicyAll WHERE id = :#${header.id} "
+                + "UNION ALL SELECT t.id, t.updated_to_id, CASE WHEN t.id = v.updated_to_id THEN 1 ELSE -1 END FROM RetentionPolicyAll t JOIN versions v "
+                + "ON (v.direction >= 0 AND t.id = v.updated_to_id) OR (v.direction <= 0 AND t.updated_to_id = v.id)) "
+                + "SELECT * FROM RetentionPolicyAll WHERE id IN (SELECT id FROM versions) ORDER BY id")
+            .choice()
+                .when(simple("${body.isEmpty()}"))
+                    .setBody(constant("Retention policy not found"))
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
             .end();
 
-        from("direct:updateRetentionPolicyById")
+        from("direct:updateRetentionPolicyById").routeId("updateRetentionPolicyById")
             .to("bean-validator:validateRetentionPolicyUpdate")
+            .process(bulkhead::enter)
             .process(exchange -> {
-                Integer oldId = exchange.getIn().getHeader("id", Integer.class);
-                exchange.getIn().setHeader("oldId", oldId);
-
                 RetentionPolicyUpdate retentionPolicyUpdate = exchange.getIn().getBody(RetentionPolicyUpdate.class);
-                exchange.setProperty("retentionPolicyUpdate", retentionPolicyUpdate);
-            })
-            .to("sql:SELECT * FROM RetentionPolicy WHERE id = :#oldId AND deleted_by IS NULL?outputType=SelectOne")
-            .filter(simple("${body} == null"))
-                .setBody(constant("Retention policy not found or deleted"))
-                .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
-                .stop()
-            .end()
-            .process(exchange -> {
-                Map<String, Object> existingPolicy = exchange.getIn().getBody(Map.class);
-
-                RetentionPolicyUpdate retentionPolicyUpdate = exchange.getProperty("retentionPolicyUpdate", RetentionPolicyUpdate.class);
-
-                Integer retention_model_id = retentionPolicyUpdate.getRetentionModelId() != null ? retentionPolicyUpdate.getRetentionModelId() : (Integer) existingPolicy.get("RETENTION_MODEL_ID");
-                Integer retention_period = retentionPolicyUpdate.getRetentionPeriod() != null ? retentionPolicyUpdate.getRetentionPeriod() : (Integer) existingPolicy.get("RETENTION_PERIOD");
-                String action = retentionPolicyUpdate.getAction() != null ? retentionPolicyUpdate.getAction() : (String) existingPolicy.get("ACTION");
-                String tenant = (String) existingPolicy.get("TENANT");
 
-                exchange.getIn().setHeader("retention_model_id", retention_model_id);
-                exchange.getIn().setHeader("retention_period", retention_period);
-                exchange.getIn().setHeader("action", action);
-                exchange.getIn().setHeader("tenant", tenant);
+                exchange.getIn().setHeader("oldId", exchange.getIn().getHeader("id", Integer.class));
+                exchange.getIn().setHeader("retention_model_id", retentionPolicyUpdate.getRetentionModelId());
+                exchange.getIn().setHeader("retention_period", retentionPolicyUpdate.getRetentionPeriod());
+                exchange.getIn().setHeader("action", retentionPolicyUpdate.getAction());
                 exchange.getIn().setHeader("created_by", "user1");
-                exchange.getIn().setHeader("CamelSqlRetrieveGeneratedKeys", "true");
+                exchange.getIn().setHeader("deleted_by", "user1");
             })
-            .to("sql:INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (:#${header.retention_model_id}, :#${header.retention_period}, :#${header.action}, :#${header.tenant}, :#${header.created_by})")
+            .to("direct:versionRetentionPolicy")
+            // Evicting the old version also drops the cached list of its tenant
+            .process(exchange -> retentionPolicyCache.evictPolicy(exchange.getIn().getHeader("oldId", Integer.class)));
+
+        // Copies the live row into a new version, taking the changed columns from the headers, and retires
+        // the old row in the same transaction. The retiring UPDATE only matches a live row, so when a
+        // concurrent update retired it first the new version is rolled back and the caller gets 409.
+        from("direct:versionRetentionPolicy").routeId("versionRetentionPolicy")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionPolicy"))
+            .setHeader("CamelSqlRetrieveGeneratedKeys", constant(true))
+            .to("sql:INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) "
+                + "SELECT COALESCE(CAST(:#retention_model_id AS INTEGER), retention_model_id), COALESCE(CAST(:#retention_period AS INTEGER), retention_period), "
+                + "COALESCE(CAST(:#action AS VARCHAR), action), tenant, :#created_by "
+                + "FROM RetentionPolicy WHERE id = :#oldId AND deleted_by IS NULL")
+            .choice()
+                .when(header(SqlConstants.SQL_UPDATE_COUNT).isEqualTo(0))
+                    // Nothing was copied. A row that another update already replaced is a conflict, not a miss.
+                    .to("sql:SELECT updated_to_id FROM RetentionPolicyAll WHERE id = :#oldId?outputType=SelectOne")
+                    .choice()
+                        .when(body().isNotNull())
+                            .setBody(constant("Retention policy was updated concurrently, fetch the latest version and try again"))
+                            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(409))
+                        .otherwise()
+                            .setBody(constant("Retention policy not found or deleted"))
+                            .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(404))
+                    .end()
+                    .stop()
+            .end()
             .process(exchange -> {
                 List<Map<String, Object>> generatedKeys = exchange.getMessage().getHeader(SqlConstants.SQL_GENERATED_KEYS_DATA, List.class);
-                if (generatedKeys != null) {
-                    Object generatedKey = generatedKeys.get(0).values().iterator().next();
-                    exchange.getMessage().setBody(generatedKey);
-                }
-            })
-            .process(exchange -> {
-                exchange.getIn().setHeader("newid", exchange.getMessage().getBody(Integer.class));
-                exchange.getIn().setHeader("deleted_by", "user1");
+                exchange.getIn().setHeader("newId", generatedKeys.get(0).values().iterator().next());
             })
-            .to("sql:UPDATE RetentionPolicy SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP, updated_to_id =:#newId WHERE id = :#oldId");
+            .to("sql:UPDATE RetentionPolicy SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP, updated_to_id = :#newId WHERE id = :#oldId AND deleted_by IS NULL")
+            .choice()
+                .when(header(SqlConstants.SQL_UPDATE_COUNT).isEqualTo(0))
+                    .setBody(constant("Retention policy was updated concurrently, fetch the latest version and try again"))
+                    .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(409))
+                    .markRollbackOnly()
+            .end()
+            .setBody(header("newId"));
 
-        from("direct:deleteRetentionPolicyById")
+        from("direct:deleteRetentionPolicyById").routeId("deleteRetentionPolicyById")
+            .process(bulkhead::enter)
             .setHeader("deleted_by", constant("user1"))
-            .to("sql:UPDATE RetentionPolicy SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP WHERE id = :#id AND deleted_by IS NULL")
+            .to("direct:softDeleteRetentionPolicy")
+            .process(exchange -> retentionPolicyCache.evictPolicy(exchange.getIn().getHeader("id", Integer.class)))
             .choice()
                 .when(header(SqlConstants.SQL_UPDATE_COUNT).isEqualTo(1))
                     .setBody(constant("Retention policy soft deleted successfully"))
@@ -198,5 +435,206 @@ public class RetentionPolicyRoute extends RouteBuilder {
                     .setBody(constant("Unexpected error occurred during deletion"))
                     .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500))
             .end();
+
+        from("direct:softDeleteRetentionPolicy").routeId("softDeleteRetentionPolicy")
+            .transacted()
+            .to(EntityTags.bumpTableVersion("RetentionPolicy"))
+            .to("sql:UPDATE RetentionPolicy SET deleted_by = :#deleted_by, deleted_at = CURRENT_TIMESTAMP WHERE id = :#id AND deleted_by IS NULL");
+    }
+
+    private void validateBatch(Exchange exchange) {
+        RetentionPolicyCreate[] items = exchange.getIn().getBody(RetentionPolicyCreate[].class);
+        if (items == null || items.length == 0) {
+            exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+            exchange.getIn().setBody("Validation failed: the batch must contain at least one retention policy");
+            return;
+        }
+        if (items.length > maxBatchItems) {
+            exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 413);
+            exchange.getIn().setBody("At most " + maxBatchItems + " retention policies can be created per request");
+            return;
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(Arrays.asList(new BatchItemResult[items.length]));
+        Set<Integer> retentionModelIds = new HashSet<>();
+        Set<String> tenants = new HashSet<>();
+        boolean rejected = false;
+        for (int i = 0; i < items.length; i++) {
+            Set<ConstraintViolation<RetentionPolicyCreate>> violations = items[i] == null ? Set.of() : validator.validate(items[i]);
+            if (items[i] == null || !violations.isEmpty()) {
+                StringBuilder errorMessage = new StringBuilder("Validation failed: ");
+                violations.forEach(violation ->
+                    errorMessage.append(violation.getPropertyPath()).append(" ").append(violation.getMessage()).append("; "));
+                results.set(i, BatchItemResult.rejected(i, errorMessage.toString()));
+                rejected = true;
+            } else {
+                retentionModelIds.add(items[i].getRetentionModelId());
+                tenants.add(items[i].getTenant());
+            }
+        }
+
+        exchange.setProperty("batchItems", items);
+        exchange.setProperty("batchResults", results);
+        exchange.setProperty("batchRejected", rejected);
+        exchange.getIn().setHeader("retention_model_ids", retentionModelIds);
+        if (tenants.size() == 1) {
+            // Single-tenant batches count against that tenant's bulkhead; mixed ones only against the global one
+            exchange.setProperty(Bulkhead.TENANT, tenants.iterator().next());
+        }
+    }
+
+    private void prepareBatchRows(Exchange exchange) {
+        Map<Integer, Integer> modelRetentionPeriods = new HashMap<>();
+        for (Map<String, Object> model : (List<Map<String, Object>>) exchange.getIn().getBody(List.class)) {
+            modelRetentionPeriods.put((Integer) model.get("ID"), (Integer) model.get("RETENTION_PERIOD"));
+        }
+
+        RetentionPolicyCreate[] items = exchange.getProperty("batchItems", RetentionPolicyCreate[].class);
+        List<BatchItemResult> results = exchange.getProperty("batchResults", List.class);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        List<Integer> insertedIndexes = new ArrayList<>();
+        Set<String> tenants = new HashSet<>();
+        boolean rejected = exchange.getProperty("batchRejected", Boolean.class);
+
+        for (int i = 0; i < items.length; i++) {
+            if (results.get(i) != null) {
+                continue;
+            }
+            RetentionPolicyCreate item = items[i];
+            if (!modelRetentionPeriods.containsKey(item.getRetentionModelId())) {
+                results.set(i, BatchItemResult.rejected(i, "Retention model does not exist or is deleted"));
+                rejected = true;
+                continue;
+            }
+
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("retention_model_id", item.getRetentionModelId());
+            row.put("retention_period", item.getRetentionPeriod() != null ? item.getRetentionPeriod() : modelRetentionPeriods.get(item.getRetentionModelId()));
+            row.put("action", item.getAction());
+            row.put("tenant", item.getTenant());
+            row.put("created_by", "user1");
+            rows.add(row);
+            insertedIndexes.add(i);
+            tenants.add(item.getTenant());
+        }
+
+        exchange.setProperty("batchRejected", rejected);
+        exchange.setProperty("batchInsertedIndexes", insertedIndexes);
+        exchange.setProperty("batchTenants", tenants);
+        exchange.getIn().setBody(rows);
+    }
+
+    private void abortBatch(Exchange exchange) {
+        List<BatchItemResult> results = exchange.getProperty("batchResults", List.class);
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, BatchItemResult.aborted(i));
+            }
+        }
+        exchange.getMessage().setBody(results);
+    }
+
+    private void parseResolvePairs(Exchange exchange) throws IOException {
+        List<RetentionPolicyResolvePair> pairs = new ArrayList<>();
+        EffectivePolicy.Pairs distinctPairs = new EffectivePolicy.Pairs();
+
+        // Read one pair at a time, so an oversized request is rejected without parsing all of it
+        try (JsonParser parser = MAPPER.createParser(exchange.getIn().getBody(InputStream.class))) {
+            JsonToken token = parser.nextToken();
+            if (token != JsonToken.START_ARRAY) {
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                exchange.getIn().setBody("Validation failed: the body must be an array of tenant and retention_model_id pairs");
+                return;
+            }
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                if (pairs.size() == maxResolvePairs) {
+                    exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 413);
+                    exchange.getIn().setBody("At most " + maxResolvePairs + " pairs can be resolved per request");
+                    return;
+                }
+                RetentionPolicyResolvePair pair = parser.readValueAs(RetentionPolicyResolvePair.class);
+                Set<ConstraintViolation<RetentionPolicyResolvePair>> violations = validator.validate(pair);
+                if (!violations.isEmpty()) {
+                    StringBuilder errorMessage = new StringBuilder("Validation failed: pair " + pairs.size() + ": ");
+                    violations.forEach(violation ->
+                        errorMessage.append(violation.getPropertyPath()).append(" ").append(violation.getMessage()).append("; "));
+                    exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                    exchange.getIn().setBody(errorMessage.toString());
+                    return;
+                }
+                pairs.add(pair);
+                distinctPairs.add(pair.getTenant(), pair.getRetentionModelId());
+            }
+            if (token != JsonToken.END_ARRAY) {
+                exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 400);
+                exchange.getIn().setBody("Validation failed: the body must be an array of tenant and retention_model_id pairs");
+                return;
+            }
+        }
+
+        exchange.setProperty("resolvePairs", pairs);
+        distinctPairs.setHeaders(exchange);
+    }
+
+    private void writeResolutions(Exchange exchange) throws IOException {
+        Map<String, EffectivePolicy> policies = new HashMap<>();
+        for (Map<String, Object> row : (List<Map<String, Object>>) exchange.getIn().getBody(List.class)) {
+            // Rows are ordered by id, so the newest policy for a pair wins
+            EffectivePolicy policy = EffectivePolicy.fromRow(row);
+            policies.put(policy.key(), policy);
+        }
+
+        Instant resolvedAt = Instant.now();
+        ResponseSpool resolutions = ResponseSpool.jsonArray(exchange);
+        for (RetentionPolicyResolvePair pair : (List<RetentionPolicyResolvePair>) exchange.getProperty("resolvePairs", List.class)) {
+            EffectivePolicy policy = policies.get(EffectivePolicy.key(pair.getTenant(), pair.getRetentionModelId()));
+            resolutions.write(policy != null ? PolicyResolution.of(policy, resolvedAt) : PolicyResolution.unresolved(pair));
+        }
+        exchange.getMessage().setBody(resolutions.finish());
+        exchange.getMessage().setHeader(Exchange.CONTENT_TYPE, "application/json");
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record PolicyResolution(
+        @JsonProperty("tenant") String tenant,
+        @JsonProperty("retention_model_id") Integer retentionModelId,
+        @JsonProperty("policy_id") Integer policyId,
+        @JsonProperty("retention_period") Integer retentionPeriod,
+        @JsonProperty("action") String action,
+        @JsonProperty("sensitive_fields") String sensitiveFields,
+        @JsonProperty("expires_before") String expiresBefore,
+        @JsonProperty("error") String error) {
+
+        static PolicyResolution of(EffectivePolicy policy, Instant resolvedAt) {
+            String expiresBefore = policy.retentionPeriod() != null
+                ? resolvedAt.minus(policy.retentionPeriod(), ChronoUnit.DAYS).toString()
+                : null;
+            return new PolicyResolution(policy.tenant(), policy.retentionModelId(), policy.policyId(), policy.retentionPeriod(),
+                policy.action(), policy.sensitiveFields(), expiresBefore, null);
+        }
+
+        static PolicyResolution unresolved(RetentionPolicyResolvePair pair) {
+            return new PolicyResolution(pair.getTenant(), pair.getRetentionModelId(), null, null, null, null, null,
+                "No active retention policy for this tenant and retention model");
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record BatchItemResult(
+        @JsonProperty("index") int index,
+        @JsonProperty("id") Integer id,
+        @JsonProperty("error") String error) {
+
+        static BatchItemResult created(int index, Integer id) {
+            return new BatchItemResult(index, id, null);
+        }
+
+        static BatchItemResult rejected(int index, String error) {
+            return new BatchItemResult(index, null, error);
+        }
+
+        static BatchItemResult aborted(int index) {
+            return new BatchItemResult(index, null, "Not inserted: the batch was aborted because another item is invalid");
+        }
     }
 }
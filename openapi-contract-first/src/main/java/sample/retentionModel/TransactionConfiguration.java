@@ -0,0 +1,21 @@
+package sample.retentionModel;
+
+import org.apache.camel.spring.spi.SpringTransactionPolicy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Transaction policy picked up by {@code transacted()} in the routes, so that the sql endpoints
+ * of a transacted route share one JDBC transaction.
+ */
+@Configuration
+public class TransactionConfiguration {
+
+    @Bean("PROPAGATION_REQUIRED")
+    public SpringTransactionPolicy propagationRequired(PlatformTransactionManager transactionManager) {
+        SpringTransactionPolicy policy = new SpringTransactionPolicy(transactionManager);
+        policy.setPropagationBehaviorName("PROPAGATION_REQUIRED");
+        return policy;
+    }
+}
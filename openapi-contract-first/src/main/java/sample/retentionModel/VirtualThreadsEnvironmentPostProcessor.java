@@ -0,0 +1,43 @@
+package sample.retentionModel;
+
+import java.util.Map;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * Applies {@code retention.virtual-threads.enabled}. Tomcat then serves requests on virtual threads,
+ * and Camel creates its thread pools with virtual threads. Camel reads its switch once, as a system
+ * property, so it has to be set before the context starts.
+ *
+ * <p>Without a servlet thread pool there is nothing left to bound concurrency, so the connection pool
+ * defaults to a larger size and a short acquisition timeout. A burst then either gets a connection
+ * or fails fast, instead of queueing indefinitely behind a handful of connections. Explicit
+ * {@code spring.datasource.hikari.*} settings still take precedence.
+ *
+ * <p>The global bulkhead defaults to the same size as the pool, whichever size wins. A smaller limit
+ * would leave connections idle, and a larger one would queue requests in Hikari, where they end in a
+ * 503 instead of the bulkhead's 429.
+ */
+public class VirtualThreadsEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String ENABLED = "retention.virtual-threads.enabled";
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!environment.getProperty(ENABLED, Boolean.class, false)) {
+            return;
+        }
+
+        System.setProperty("camel.threads.virtual.enabled", "true");
+        String poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size",
+            environment.getProperty("retention.virtual-threads.pool-size", "50"));
+        environment.getPropertySources().addLast(new MapPropertySource("virtualThreadsDefaults", Map.of(
+            "spring.threads.virtual.enabled", "true",
+            "spring.datasource.hikari.maximum-pool-size", poolSize,
+            "spring.datasource.hikari.connection-timeout", environment.getProperty("retention.virtual-threads.connection-timeout", "3000"),
+            "retention.bulkhead.global.max-concurrent", poolSize)));
+    }
+}
@@ -0,0 +1,46 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * One slot per tenant and no queue, so the second request of a tenant is rejected at once while the
+ * first one is still in flight.
+ */
+class BulkheadTest {
+
+    private final CamelContext context = new DefaultCamelContext();
+    private final Bulkhead bulkhead = new Bulkhead(new SimpleMeterRegistry(), true, 100, 0, 1, 0, Duration.ZERO, Duration.ofSeconds(1));
+
+    @Test
+    void rejectsTheSecondRequestOfATenant() throws Exception {
+        bulkhead.enter(exchangeFor("acme"));
+
+        assertThrows(BulkheadFullException.class, () -> bulkhead.enter(exchangeFor("acme")));
+    }
+
+    @Test
+    void ignoresTenantHeaderSentByTheClient() throws Exception {
+        bulkhead.enter(exchangeFor("acme"));
+
+        // A client naming another tenant in a header must not take, or be held to, that tenant's slot
+        Exchange spoofed = new DefaultExchange(context);
+        spoofed.getIn().setHeader("tenant", "acme");
+        bulkhead.enter(spoofed);
+    }
+
+    private Exchange exchangeFor(String tenant) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.setProperty(Bulkhead.TENANT, tenant);
+        return exchange;
+    }
+}
@@ -0,0 +1,65 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A one-change buffer, so that a cursor taken before a few writes is answered from the database,
+ * a page of two changes at a time.
+ */
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"retention.changes.buffer-size=1", "retention.changes.page-size=2", "retention.changes.settle-delay=0", "retention.changes.poll-interval=100"})
+@ActiveProfiles("embedded")
+class ChangeFeedRouteTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void catchUpIsPaged() throws Exception {
+        String cursor = changes("/changes?wait=5").path("cursor").asText();
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+                "feed-test-" + i, "test", "Change feed test model", 30, "email", "test");
+            Thread.sleep(10);
+        }
+        // Let the poller move the buffer past the cursor
+        Thread.sleep(1000);
+
+        JsonNode first = changes("/changes?cursor=" + cursor);
+        JsonNode second = changes("/changes?cursor=" + first.path("cursor").asText());
+
+        assertEquals(2, first.path("changes").size(), first.toString());
+        assertEquals(1, second.path("changes").size(), second.toString());
+        assertEquals("feed-test-2", jdbcTemplate.queryForObject("SELECT name FROM RetentionModel WHERE id = ?", String.class, second.path("changes").get(0).path("id").asInt()));
+    }
+
+    private JsonNode changes(String path) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+        return MAPPER.readTree(response.body());
+    }
+}
@@ -0,0 +1,106 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Drives the feed without the poller: the window and catch-up steps are called with the headers and
+ * rows the routes would pass, so paging and the waiter limit are checked without a database.
+ */
+class ChangeFeedTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 10, 17, 10, 0);
+
+    private final CamelContext context = new DefaultCamelContext();
+
+    @Test
+    void answersAtOnceWhenTheWaitersAreAtTheirLimit() throws Exception {
+        ChangeFeed feed = new ChangeFeed(10000, Duration.ofSeconds(30), 0, Duration.ofSeconds(2), 2);
+        Exchange tick = new DefaultExchange(context);
+        tick.getIn().setHeader("until", Timestamp.valueOf(T0));
+        feed.window(tick);
+
+        Exchange subscriber = new DefaultExchange(context);
+        subscriber.getIn().setHeader("wait", 30);
+        long start = System.nanoTime();
+        feed.await(subscriber);
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toSeconds() < 5, "the subscriber was not held");
+        assertEquals(2L, subscriber.getMessage().getHeader("Retry-After"));
+        assertTrue(((ChangeFeed.ChangeBatch) subscriber.getMessage().getBody()).changes().isEmpty());
+    }
+
+    @Test
+    void catchUpReturnsTheWholeRangeWhenItFitsAPage() {
+        ChangeFeed feed = new ChangeFeed(10000, Duration.ofSeconds(30), 50, Duration.ofSeconds(1), 2);
+        Exchange exchange = catchUp(T0.plusSeconds(10), T0.plusSeconds(1), T0.plusSeconds(2));
+
+        feed.catchUp(exchange);
+
+        ChangeFeed.ChangeBatch batch = exchange.getMessage().getBody(ChangeFeed.ChangeBatch.class);
+        assertEquals(2, batch.changes().size());
+        assertEquals(T0.plusSeconds(10).toString(), batch.cursor());
+    }
+
+    @Test
+    void catchUpStopsBeforeTheInstantOfTheFirstChangeLeftOut() {
+        ChangeFeed feed = new ChangeFeed(10000, Duration.ofSeconds(30), 50, Duration.ofSeconds(1), 2);
+        Exchange exchange = catchUp(T0.plusSeconds(10), T0.plusSeconds(1), T0.plusSeconds(2), T0.plusSeconds(2));
+
+        feed.catchUp(exchange);
+
+        ChangeFeed.ChangeBatch batch = exchange.getMessage().getBody(ChangeFeed.ChangeBatch.class);
+        assertEquals(1, batch.changes().size());
+        assertEquals(T0.plusSeconds(2).toString(), batch.cursor());
+    }
+
+    @Test
+    void catchUpReadsAnInstantLargerThanAPageWhole() {
+        ChangeFeed feed = new ChangeFeed(10000, Duration.ofSeconds(30), 50, Duration.ofSeconds(1), 2);
+        Exchange exchange = catchUp(T0.plusSeconds(10), T0.plusSeconds(1), T0.plusSeconds(1), T0.plusSeconds(1));
+
+        feed.catchUp(exchange);
+
+        assertEquals(true, exchange.getProperty(ChangeFeed.CATCH_UP_INSTANT));
+        assertEquals(Timestamp.valueOf(T0.plusSeconds(1)), exchange.getIn().getHeader("since"));
+        assertNull(exchange.getMessage().getBody(ChangeFeed.ChangeBatch.class));
+
+        // The route reads the instant without a limit and hands the rows back
+        exchange.getIn().setBody(rows(T0.plusSeconds(1), T0.plusSeconds(1), T0.plusSeconds(1)));
+        feed.catchUp(exchange);
+
+        ChangeFeed.ChangeBatch batch = exchange.getMessage().getBody(ChangeFeed.ChangeBatch.class);
+        assertEquals(3, batch.changes().size());
+        assertEquals(T0.plusSeconds(1).plusNanos(1).toString(), batch.cursor());
+    }
+
+    private Exchange catchUp(LocalDateTime until, LocalDateTime... changedAt) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader("until", Timestamp.valueOf(until));
+        exchange.setProperty(ChangeFeed.CATCH_UP, true);
+        exchange.getIn().setBody(rows(changedAt));
+        return exchange;
+    }
+
+    private static List<Map<String, Object>> rows(LocalDateTime... changedAt) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < changedAt.length; i++) {
+            rows.add(Map.of("ENTITY", "policy", "ID", i + 1, "CHANGE", "CREATED", "CHANGED_AT", Timestamp.valueOf(changedAt[i])));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,188 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Runs the compaction routes by hand, with no minimum age, instead of on their timer. The change feed
+ * keeps a one-change buffer, so that an older cursor is answered from the *All views.
+ */
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"retention.compaction.enabled=false", "retention.compaction.batch-size=50", "retention.compaction.max-batches=20",
+        "retention.compaction.batch-delay=PT0S", "retention.changes.buffer-size=1", "retention.changes.settle-delay=0", "retention.changes.poll-interval=100"})
+@ActiveProfiles("embedded")
+class CompactionRouteTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    @Test
+    void deadVersionsMoveToHistory() throws Exception {
+        int modelId = insertModel("compaction-move-test");
+        int first = createPolicy(modelId, "compaction-move-test");
+        int second = updatePolicy(first, 60);
+        int third = updatePolicy(second, 90);
+        deletePolicy(third);
+        int live = createPolicy(modelId, "compaction-move-test");
+        Map<String, Object> before = jdbcTemplate.queryForMap("SELECT * FROM RetentionPolicy WHERE id = ?", second);
+
+        compact("direct:compactRetentionPolicies");
+
+        assertEquals(List.of(live), jdbcTemplate.queryForList("SELECT id FROM RetentionPolicy WHERE tenant = 'compaction-move-test'", Integer.class));
+        assertEquals(List.of(first, second, third),
+            jdbcTemplate.queryForList("SELECT id FROM RetentionPolicyHistory WHERE tenant = 'compaction-move-test' ORDER BY id", Integer.class));
+        assertEquals(before, jdbcTemplate.queryForMap("SELECT * FROM RetentionPolicyHistory WHERE id = ?", second));
+    }
+
+    @Test
+    void rolledBackBatchIsResumedByTheNextRun() throws Exception {
+        int modelId = insertModel("compaction-resume-test");
+        int first = createPolicy(modelId, "compaction-resume-test");
+        int second = updatePolicy(first, 60);
+        deletePolicy(second);
+        // A history row already using the id makes every batch that contains it fail
+        jdbcTemplate.update("INSERT INTO RetentionPolicyHistory (id, retention_model_id, action, tenant, created_by) VALUES (?, ?, ?, ?, ?)",
+            second, modelId, "DELETE", "compaction-conflict", "test");
+
+        compact("direct:compactRetentionPolicies");
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE id = ?", Integer.class, second));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicyHistory WHERE id = ?", Integer.class, second));
+
+        jdbcTemplate.update("DELETE FROM RetentionPolicyHistory WHERE id = ?", second);
+        compact("direct:compactRetentionPolicies");
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE tenant = 'compaction-resume-test'", Integer.class));
+        assertEquals(List.of(first, second),
+            jdbcTemplate.queryForList("SELECT id FROM RetentionPolicyHistory WHERE tenant = 'compaction-resume-test' ORDER BY id", Integer.class));
+    }
+
+    @Test
+    void modelIsCompactedOnlyAfterThePoliciesReferencingIt() throws Exception {
+        int modelId = insertModel("compaction-order-test");
+        int policyId = createPolicy(modelId, "compaction-order-test");
+        deletePolicy(policyId);
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/retention-models/" + modelId)).DELETE()).statusCode());
+
+        // The dead policy still references the model, so the model stays
+        compact("direct:compactRetentionModels");
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionModel WHERE id = ?", Integer.class, modelId));
+
+        compact("direct:compactRetentionPolicies", "direct:compactRetentionModels");
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionModel WHERE id = ?", Integer.class, modelId));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionModelHistory WHERE id = ?", Integer.class, modelId));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicyHistory WHERE id = ?", Integer.class, policyId));
+    }
+
+    @Test
+    void historyAndChangeFeedStillSeeCompactedVersions() throws Exception {
+        int modelId = insertModel("compaction-views-test");
+        String cursor = changes("/changes?wait=5").path("cursor").asText();
+        int first = createPolicy(modelId, "compaction-views-test");
+        int second = updatePolicy(first, 60);
+        int third = updatePolicy(second, 90);
+        // Let the poller move the buffer past the cursor
+        Thread.sleep(1000);
+
+        compact("direct:compactRetentionPolicies");
+        assertEquals(List.of(third), jdbcTemplate.queryForList("SELECT id FROM RetentionPolicy WHERE tenant = 'compaction-views-test'", Integer.class));
+
+        HttpResponse<String> history = send(HttpRequest.newBuilder(uri("/retention_policies/" + first + "/history")).GET());
+        assertEquals(200, history.statusCode(), history.body());
+        List<Integer> versions = new ArrayList<>();
+        MAPPER.readTree(history.body()).forEach(version -> versions.add(version.path("id").asInt()));
+        assertEquals(List.of(first, second, third), versions);
+
+        List<String> policyChanges = new ArrayList<>();
+        for (JsonNode batch = changes("/changes?cursor=" + cursor); batch.path("changes").size() > 0; batch = changes("/changes?cursor=" + batch.path("cursor").asText())) {
+            for (JsonNode change : batch.path("changes")) {
+                int id = change.path("id").asInt();
+                if ("policy".equals(change.path("entity").asText()) && (id == first || id == second || id == third)) {
+                    policyChanges.add(id + " " + change.path("change").asText());
+                }
+            }
+        }
+        assertTrue(policyChanges.containsAll(List.of(first + " CREATED", first + " UPDATED", second + " CREATED", second + " UPDATED", third + " CREATED")),
+            policyChanges.toString());
+        assertEquals(5, policyChanges.size(), policyChanges.toString());
+    }
+
+    private void compact(String... routes) throws InterruptedException {
+        // Versions are compacted once their deletion time is before the current time
+        Thread.sleep(50);
+        for (String route : routes) {
+            producerTemplate.sendBodyAndHeaders(route, null, Map.of("batch_size", 50, "min_age", 0L));
+        }
+    }
+
+    private int insertModel(String name) {
+        jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+            name, "test", "Compaction test model", 30, "email", "test");
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM RetentionModel", Integer.class);
+    }
+
+    private int createPolicy(int modelId, String tenant) throws Exception {
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"" + tenant + "\"}")));
+        assertEquals(200, created.statusCode(), created.body());
+        return Integer.parseInt(created.body().trim());
+    }
+
+    private int updatePolicy(int id, int retentionPeriod) throws Exception {
+        HttpResponse<String> updated = send(HttpRequest.newBuilder(uri("/retention_policies/" + id))
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString("{\"retention_period\": " + retentionPeriod + "}")));
+        assertEquals(200, updated.statusCode(), updated.body());
+        return Integer.parseInt(updated.body().trim());
+    }
+
+    private void deletePolicy(int id) throws Exception {
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/retention_policies/" + id)).DELETE()).statusCode());
+    }
+
+    private JsonNode changes(String path) throws Exception {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri(path)).GET());
+        assertEquals(200, response.statusCode(), response.body());
+        return MAPPER.readTree(response.body());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,96 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * A streamed export splits the rows into exchanges of their own; the response and route metrics
+ * still count the request once.
+ */
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("embedded")
+class ResponseStatusMetricsTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void streamedExportIsCountedOnce() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+                "metrics-test-" + i, "test", "Metrics test model", 30, "email", "test");
+        }
+        double responses = responses("200");
+        long routeCalls = routeTimer().map(Timer::count).orElse(0L);
+
+        HttpResponse<String> export = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/retention-models/export")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, export.statusCode());
+        assertTrue(export.body().contains("metrics-test-2"), "the export has several rows, each split into an exchange of its own");
+        assertEventually(responses + 1, () -> responses("200"));
+        assertEventually(routeCalls + 1, () -> routeTimer().map(Timer::count).orElse(0L));
+    }
+
+    @Test
+    void notFoundIsCountedByStatus() throws Exception {
+        double notFound = responses("/retention-models/{id}", "404");
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/retention-models/2147483647")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(404, response.statusCode());
+        assertEventually(notFound + 1, () -> responses("/retention-models/{id}", "404"));
+    }
+
+    /** The exchange completes, and is counted, just after its response has been written. */
+    private static void assertEventually(double expected, DoubleSupplier actual) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (actual.getAsDouble() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, actual.getAsDouble());
+    }
+
+    private double responses(String status) {
+        return responses("/retention-models/export", status);
+    }
+
+    private double responses(String uri, String status) {
+        Counter counter = meterRegistry.find("retention.http.responses").tag("uri", uri).tag("status", status).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private Optional<Timer> routeTimer() {
+        return Optional.ofNullable(meterRegistry.find("camel.route.policy").tag("routeId", "exportRetentionModels").timer());
+    }
+}
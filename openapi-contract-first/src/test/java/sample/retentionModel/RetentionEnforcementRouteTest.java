@@ -0,0 +1,136 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Streams NDJSON bodies through {@code POST /retention_enforcement}. The large test sends several
+ * times the maximum heap; surefire runs the tests with a small heap, so that request only completes
+ * if neither the records nor the decisions are ever held in memory as a whole. It takes minutes, so
+ * it only runs with {@code -Plarge-tests}.
+ */
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("embedded")
+class RetentionEnforcementRouteTest {
+
+    private static final String TENANT = "enforcement-test";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void decidesEveryRecordOfSeveralBatches() throws Exception {
+        // Every record is long expired, so there is one decision per record
+        NdjsonRecords records = new NdjsonRecords(insertPolicy(), 4 * 1024 * 1024);
+
+        long decisions = enforce(records);
+        assertEquals(records.count, decisions);
+        assertTrue(records.count > 2 * 1000, "the request spans several batches");
+    }
+
+    @Test
+    @Tag("large")
+    void streamsMoreRecordsThanFitInTheHeap() throws Exception {
+        // Every record is long expired, so the response is as large as the request
+        NdjsonRecords records = new NdjsonRecords(insertPolicy(), 3 * Runtime.getRuntime().maxMemory());
+
+        long decisions = enforce(records);
+        assertEquals(records.count, decisions);
+        assertTrue(records.bytes > 2 * Runtime.getRuntime().maxMemory(), "the request must not fit in the heap");
+    }
+
+    private int insertPolicy() {
+        jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+            "enforcement-test", "test", "Enforcement test model", 30, "email", "test");
+        Integer modelId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM RetentionModel", Integer.class);
+        jdbcTemplate.update("INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (?, ?, ?, ?, ?)",
+            modelId, 30, "DELETE", TENANT, "test");
+        return modelId;
+    }
+
+    /** Sends the records and counts the DELETE decisions in the response. */
+    private long enforce(NdjsonRecords records) throws Exception {
+        HttpResponse<Stream<String>> response = HttpClient.newHttpClient().send(
+            HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/retention_enforcement"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> records))
+                .build(),
+            HttpResponse.BodyHandlers.ofLines());
+
+        assertEquals(200, response.statusCode());
+        try (Stream<String> lines = response.body()) {
+            return lines.filter(line -> line.contains("\"action\":\"DELETE\"")).count();
+        }
+    }
+
+    /** Generates the NDJSON records one line at a time until the requested size is reached. */
+    private static final class NdjsonRecords extends InputStream {
+
+        private final int modelId;
+        private final long size;
+        private byte[] line = new byte[0];
+        private int position;
+        long count;
+        long bytes;
+
+        NdjsonRecords(int modelId, long size) {
+            this.modelId = modelId;
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (position == line.length && !nextLine()) {
+                return -1;
+            }
+            return line[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == line.length && !nextLine()) {
+                return -1;
+            }
+            int n = Math.min(length, line.length - position);
+            System.arraycopy(line, position, buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        private boolean nextLine() {
+            if (bytes >= size) {
+                return false;
+            }
+            line = ("{\"tenant\": \"" + TENANT + "\", \"retention_model_id\": " + modelId
+                + ", \"record_id\": \"r-" + count + "\", \"created_at\": \"2000-01-01T00:00:00Z\"}\n").getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            count++;
+            bytes += line.length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("embedded")
+class RetentionModelRouteTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void listETagChangesWithEveryWrite() throws Exception {
+        HttpResponse<String> first = send(HttpRequest.newBuilder(uri("/retention-models?limit=1000")).GET());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        assertEquals(304, send(HttpRequest.newBuilder(uri("/retention-models?limit=1000")).header("If-None-Match", etag).GET()).statusCode());
+
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention-models"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"etag-test\", \"ownership\": \"test\", \"description\": \"Route test model\", "
+                + "\"retention_period\": 30, \"sensitive_fields\": \"email\"}")));
+        HttpResponse<String> afterCreate = send(HttpRequest.newBuilder(uri("/retention-models?limit=1000")).header("If-None-Match", etag).GET());
+
+        assertEquals(200, afterCreate.statusCode());
+        String createdTag = afterCreate.headers().firstValue("ETag").orElseThrow();
+        assertNotEquals(etag, createdTag);
+
+        // A delete adds no row, so only the write counter tells the pages apart
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/retention-models/" + created.body().trim())).DELETE()).statusCode());
+        HttpResponse<String> afterDelete = send(HttpRequest.newBuilder(uri("/retention-models?limit=1000")).header("If-None-Match", createdTag).GET());
+
+        assertEquals(200, afterDelete.statusCode());
+        assertNotEquals(createdTag, afterDelete.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void modelETagIsRevalidatedUntilTheModelIsDeleted() throws Exception {
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention-models"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"etag-model-test\", \"ownership\": \"test\", \"description\": \"Route test model\", "
+                + "\"retention_period\": 30, \"sensitive_fields\": \"email\"}")));
+        String id = created.body().trim();
+
+        HttpResponse<String> read = send(HttpRequest.newBuilder(uri("/retention-models/" + id)).GET());
+        String etag = read.headers().firstValue("ETag").orElseThrow();
+        HttpResponse<String> revalidated = send(HttpRequest.newBuilder(uri("/retention-models/" + id)).header("If-None-Match", etag).GET());
+
+        assertEquals(200, read.statusCode());
+        assertEquals(304, revalidated.statusCode());
+        assertEquals("", revalidated.body());
+
+        send(HttpRequest.newBuilder(uri("/retention-models/" + id)).DELETE());
+        assertEquals(404, send(HttpRequest.newBuilder(uri("/retention-models/" + id)).header("If-None-Match", etag).GET()).statusCode());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
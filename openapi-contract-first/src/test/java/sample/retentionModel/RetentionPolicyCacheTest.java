@@ -0,0 +1,89 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Replays the interleavings of a reader that misses and a writer that evicts, one step at a time,
+ * so the race between a reader's query and a writer's eviction is checked deterministically.
+ */
+class RetentionPolicyCacheTest {
+
+    private final CamelContext context = new DefaultCamelContext();
+    private final RetentionPolicyCache cache = new RetentionPolicyCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(10));
+
+    @Test
+    void storesTenantPoliciesWhenNothingWasEvicted() {
+        Exchange reader = missByTenant("acme");
+        reader.getMessage().setBody(List.of(policy(1, "acme")));
+        cache.storeByTenant(reader);
+
+        Exchange next = missByTenant("acme");
+        assertEquals(true, next.getProperty(RetentionPolicyCache.CACHE_HIT));
+    }
+
+    @Test
+    void dropsTenantPoliciesReadBeforeAnEviction() {
+        Exchange reader = missByTenant("acme");
+        // The reader's query returns the old row, then the writer commits and evicts before the store
+        reader.getMessage().setBody(List.of(policy(1, "acme")));
+        cache.evictPolicy(1);
+        cache.storeByTenant(reader);
+
+        assertNull(missByTenant("acme").getProperty(RetentionPolicyCache.CACHE_HIT));
+    }
+
+    @Test
+    void dropsPolicyReadBeforeAnEviction() {
+        Exchange reader = missById(1);
+        reader.getMessage().setBody(policy(1, "acme"));
+        cache.evictTenant("acme");
+        cache.storeById(reader);
+
+        assertNull(missById(1).getProperty(RetentionPolicyCache.CACHE_HIT));
+    }
+
+    @Test
+    void storesAgainAfterAFreshLookup() {
+        Exchange stale = missById(1);
+        cache.evictPolicy(1);
+        stale.getMessage().setBody(policy(1, "acme"));
+        cache.storeById(stale);
+
+        Exchange fresh = missById(1);
+        fresh.getMessage().setBody(policy(1, "acme"));
+        cache.storeById(fresh);
+
+        assertEquals(true, missById(1).getProperty(RetentionPolicyCache.CACHE_HIT));
+    }
+
+    private Exchange missByTenant(String tenant) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader("tenant", tenant);
+        cache.lookupByTenant(exchange);
+        return exchange;
+    }
+
+    private Exchange missById(int id) {
+        Exchange exchange = new DefaultExchange(context);
+        exchange.getIn().setHeader("id", id);
+        cache.lookupById(exchange);
+        return exchange;
+    }
+
+    private static Map<String, Object> policy(int id, String tenant) {
+        return Map.of("ID", id, "TENANT", tenant);
+    }
+}
@@ -0,0 +1,111 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * {@code POST /retention_policies/resolve} with a limit of four pairs, so that the limit is reached
+ * with a small request.
+ */
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "retention.resolve.max-pairs=4")
+@ActiveProfiles("embedded")
+class RetentionPolicyResolveTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void resolvesEveryPairInRequestOrder() throws Exception {
+        int modelId = insertModel("resolve-test", 30);
+        insertPolicy(modelId, null, "resolve-default");
+        insertPolicy(modelId, 90, "resolve-override");
+
+        HttpResponse<String> response = resolve("["
+            + pair("resolve-override", modelId) + ","
+            + pair("resolve-unknown", modelId) + ","
+            + pair("resolve-default", modelId) + ","
+            + pair("resolve-override", modelId) + "]");
+
+        assertEquals(200, response.statusCode(), response.body());
+        JsonNode results = MAPPER.readTree(response.body());
+        assertEquals(4, results.size(), response.body());
+
+        assertEquals("resolve-override", results.get(0).path("tenant").asText());
+        assertEquals(90, results.get(0).path("retention_period").asInt());
+        assertEquals("email", results.get(0).path("sensitive_fields").asText());
+        assertTrue(results.get(0).has("expires_before"));
+
+        assertEquals("resolve-unknown", results.get(1).path("tenant").asText());
+        assertEquals(modelId, results.get(1).path("retention_model_id").asInt());
+        assertTrue(results.get(1).path("policy_id").isMissingNode(), response.body());
+        assertTrue(results.get(1).has("error"), response.body());
+
+        // The policy has no period of its own, so the model's applies
+        assertEquals("resolve-default", results.get(2).path("tenant").asText());
+        assertEquals(30, results.get(2).path("retention_period").asInt());
+
+        assertEquals(results.get(0), results.get(3));
+    }
+
+    @Test
+    void malformedPairsAreRejected() throws Exception {
+        assertEquals(400, resolve(pair("resolve-test", 1)).statusCode());
+        assertEquals(400, resolve("[{\"tenant\": \"resolve-test\"}]").statusCode());
+        assertEquals(400, resolve("[" + pair("resolve-test", 1) + ", 42]").statusCode());
+    }
+
+    @Test
+    void pairsOverTheLimitAreRejected() throws Exception {
+        String pair = pair("resolve-limit", 1);
+
+        assertEquals(200, resolve("[" + String.join(",", pair, pair, pair, pair) + "]").statusCode());
+        assertEquals(413, resolve("[" + String.join(",", pair, pair, pair, pair, pair) + "]").statusCode());
+    }
+
+    private int insertModel(String name, int retentionPeriod) {
+        jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+            name, "test", "Resolve test model", retentionPeriod, "email", "test");
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM RetentionModel", Integer.class);
+    }
+
+    private void insertPolicy(int modelId, Integer retentionPeriod, String tenant) {
+        jdbcTemplate.update("INSERT INTO RetentionPolicy (retention_model_id, retention_period, action, tenant, created_by) VALUES (?, ?, ?, ?, ?)",
+            modelId, retentionPeriod, "ANONYMIZE", tenant, "test");
+    }
+
+    private static String pair(String tenant, int retentionModelId) {
+        return "{\"tenant\": \"" + tenant + "\", \"retention_model_id\": " + retentionModelId + "}";
+    }
+
+    private HttpResponse<String> resolve(String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/retention_policies/resolve"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,213 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("embedded")
+class RetentionPolicyRouteTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void createRejectsTenantLongerThanTheColumn() throws Exception {
+        int modelId = insertModel("long-tenant-test");
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"" + "t".repeat(256) + "\"}")));
+
+        assertEquals(400, response.statusCode(), response.body());
+        assertTrue(response.body().contains("tenant"), response.body());
+    }
+
+    @Test
+    void concurrentUpdatesLeaveOneLiveVersion() throws Exception {
+        int modelId = insertModel("concurrent-test");
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"concurrent-test\"}")));
+        int oldId = Integer.parseInt(created.body().trim());
+
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            int retentionPeriod = 100 + i;
+            statuses.add(executor.submit(() -> {
+                start.await();
+                return send(HttpRequest.newBuilder(uri("/retention_policies/" + oldId))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"retention_period\": " + retentionPeriod + "}"))).statusCode();
+            }));
+        }
+        start.countDown();
+        List<Integer> codes = new ArrayList<>();
+        for (Future<Integer> status : statuses) {
+            codes.add(status.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, Collections.frequency(codes, 200), "one caller wins: " + codes);
+        assertEquals(callers - 1, Collections.frequency(codes, 409), "every other caller gets 409: " + codes);
+        // The old version and the winner's version, and nothing left behind by the losers
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE tenant = 'concurrent-test'", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE tenant = 'concurrent-test' AND deleted_by IS NULL", Integer.class));
+        Integer winner = jdbcTemplate.queryForObject("SELECT updated_to_id FROM RetentionPolicy WHERE id = ?", Integer.class, oldId);
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE id = ? AND deleted_by IS NULL", Integer.class, winner));
+    }
+
+    @Test
+    void updateBlockedByAnotherTransactionIsAConflict() throws Exception {
+        int modelId = insertModel("locked-test");
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"locked-test\"}")));
+        int oldId = Integer.parseInt(created.body().trim());
+
+        // Hold the row lock until H2 gives up on the update's UPDATE statement
+        HttpResponse<String> updated = transactionTemplate.execute(status -> {
+            jdbcTemplate.update("UPDATE RetentionPolicy SET action = action WHERE id = ?", oldId);
+            try {
+                return send(HttpRequest.newBuilder(uri("/retention_policies/" + oldId))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"retention_period\": 60}")));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals(409, updated.statusCode(), updated.body());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE tenant = 'locked-test'", Integer.class));
+    }
+
+    @Test
+    void batchOverTheLimitIsRejected() throws Exception {
+        int modelId = insertModel("batch-test");
+        String item = "{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"batch-test\"}";
+
+        HttpResponse<String> accepted = send(HttpRequest.newBuilder(uri("/retention_policies/batch"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("[" + item + "," + item + "]")));
+        HttpResponse<String> rejected = send(HttpRequest.newBuilder(uri("/retention_policies/batch"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("[" + String.join(",", Collections.nCopies(1001, item)) + "]")));
+
+        assertEquals(200, accepted.statusCode());
+        assertEquals(413, rejected.statusCode());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE tenant = 'batch-test'", Integer.class));
+    }
+
+    @Test
+    void allOrNothingBatchWithAnInvalidItemInsertsNothing() throws Exception {
+        int modelId = insertModel("abort-test");
+        String valid = "{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"abort-test\"}";
+        String unknownModel = "{\"retention_model_id\": 2147483647, \"action\": \"DELETE\", \"tenant\": \"abort-test\"}";
+
+        HttpResponse<String> response = send(HttpRequest.newBuilder(uri("/retention_policies/batch?all_or_nothing=true"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("[" + valid + "," + unknownModel + "," + valid + "]")));
+
+        assertEquals(400, response.statusCode(), response.body());
+        JsonNode results = MAPPER.readTree(response.body());
+        assertEquals(3, results.size(), response.body());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, results.get(i).path("index").asInt());
+            assertTrue(results.get(i).path("id").isMissingNode(), response.body());
+        }
+        assertTrue(results.get(1).path("error").asText().contains("does not exist"), response.body());
+        assertTrue(results.get(0).path("error").asText().contains("aborted"), response.body());
+        assertTrue(results.get(2).path("error").asText().contains("aborted"), response.body());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM RetentionPolicy WHERE tenant = 'abort-test'", Integer.class));
+    }
+
+    @Test
+    void listETagChangesWithEveryWrite() throws Exception {
+        int modelId = insertModel("etag-test");
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"etag-test\"}")));
+        String etag = send(HttpRequest.newBuilder(uri("/retention_policies?limit=1000")).GET()).headers().firstValue("ETag").orElseThrow();
+
+        assertEquals(304, send(HttpRequest.newBuilder(uri("/retention_policies?limit=1000")).header("If-None-Match", etag).GET()).statusCode());
+        // Another page of the same table version is another representation
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/retention_policies?limit=1")).header("If-None-Match", etag).GET()).statusCode());
+
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/retention_policies/" + created.body().trim()))
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString("{\"retention_period\": 60}"))).statusCode());
+        HttpResponse<String> afterUpdate = send(HttpRequest.newBuilder(uri("/retention_policies?limit=1000")).header("If-None-Match", etag).GET());
+
+        assertEquals(200, afterUpdate.statusCode());
+        assertNotEquals(etag, afterUpdate.headers().firstValue("ETag").orElseThrow());
+    }
+
+    @Test
+    void policyETagIsRevalidated() throws Exception {
+        int modelId = insertModel("etag-policy-test");
+        HttpResponse<String> created = send(HttpRequest.newBuilder(uri("/retention_policies"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("{\"retention_model_id\": " + modelId + ", \"action\": \"DELETE\", \"tenant\": \"etag-policy-test\"}")));
+        String id = created.body().trim();
+
+        HttpResponse<String> read = send(HttpRequest.newBuilder(uri("/retention_policies/" + id)).GET());
+        String etag = read.headers().firstValue("ETag").orElseThrow();
+
+        assertEquals(200, read.statusCode());
+        assertEquals(304, send(HttpRequest.newBuilder(uri("/retention_policies/" + id)).header("If-None-Match", etag).GET()).statusCode());
+        assertEquals(304, send(HttpRequest.newBuilder(uri("/retention_policies/" + id)).header("If-None-Match", "\"other\", W/" + etag).GET()).statusCode());
+        assertEquals(200, send(HttpRequest.newBuilder(uri("/retention_policies/" + id)).header("If-None-Match", "\"other\"").GET()).statusCode());
+    }
+
+    private int insertModel(String name) {
+        jdbcTemplate.update("INSERT INTO RetentionModel (name, ownership, description, retention_period, sensitive_fields, created_by) VALUES (?, ?, ?, ?, ?, ?)",
+            name, "test", "Route test model", 30, "email", "test");
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM RetentionModel", Integer.class);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,80 @@
+package sample.retentionModel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Starts the application with {@code retention.virtual-threads.enabled=true}. Virtual threads need
+ * Java 21; on older runtimes Spring and Camel keep platform threads.
+ */
+@CamelSpringBootTest
+@SpringBootTest(classes = RetentionModelApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "retention.virtual-threads.enabled=true")
+@ActiveProfiles("embedded")
+class VirtualThreadsTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private HikariDataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private CamelContext camelContext;
+
+    @AfterAll
+    static void clearCamelSwitch() {
+        System.clearProperty("camel.threads.virtual.enabled");
+    }
+
+    @Test
+    void servesRequests() throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/retention-models")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), response.body());
+    }
+
+    @Test
+    void globalBulkheadMatchesTheConnectionPool() {
+        assertEquals(dataSource.getMaximumPoolSize(), (int) meterRegistry.get("retention.bulkhead.limit").tag("scope", "global").gauge().value());
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void camelThreadsAreVirtual() throws Exception {
+        ExecutorService executor = camelContext.getExecutorServiceManager().newSingleThreadExecutor(this, "virtualThreadsTest");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get();
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread), thread.toString());
+        } finally {
+            camelContext.getExecutorServiceManager().shutdown(executor);
+        }
+    }
+}